@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import gauge.messages.Messages;
+import gauge.messages.Spec;
+
+/**
+ * Messages shaped like the ones exchanged for a proxied step
+ */
+final class BenchmarkMessages {
+
+    private BenchmarkMessages() {
+    }
+
+    static Messages.Message newExecuteStep(long messageId) {
+        return Messages.Message.newBuilder()
+                .setMessageId(messageId)
+                .setMessageType(Messages.Message.MessageType.ExecuteStep)
+                .setExecuteStepRequest(Messages.ExecuteStepRequest.newBuilder()
+                        .setActualStepText("Python step with multiple arguments \"hello\" and \"1\"")
+                        .setParsedStepText("Python step with multiple arguments {} and {}")
+                        .addParameters(Spec.Parameter.newBuilder()
+                                .setParameterType(Spec.Parameter.ParameterType.Static)
+                                .setValue("hello"))
+                        .addParameters(Spec.Parameter.newBuilder()
+                                .setParameterType(Spec.Parameter.ParameterType.Static)
+                                .setValue("1")))
+                .build();
+    }
+
+    static Messages.Message newStatusResponse(long messageId) {
+        return Messages.Message.newBuilder()
+                .setMessageId(messageId)
+                .setMessageType(Messages.Message.MessageType.ExecutionStatusResponse)
+                .setExecutionStatusResponse(Messages.ExecutionStatusResponse.newBuilder()
+                        .setExecutionResult(Spec.ProtoExecutionResult.newBuilder()
+                                .setExecutionTime(1)))
+                .build();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import gauge.messages.Messages;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of a single ExecuteStep frame, with the protobuf delimited stream API as the baseline
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameCodecBenchmark {
+    private FrameCodec codec;
+    private Messages.Message message;
+    private byte[] frame;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setUp() throws IOException {
+        codec = new FrameCodec();
+        message = BenchmarkMessages.newExecuteStep(1);
+        ByteBuffer encoded = codec.encode(message);
+        frame = new byte[encoded.remaining()];
+        encoded.get(frame);
+        out = new ByteArrayOutputStream(frame.length);
+    }
+
+    @Benchmark
+    public ByteBuffer encode() throws IOException {
+        return codec.encode(message);
+    }
+
+    @Benchmark
+    public Messages.Message decode() throws IOException {
+        codec.feed(frame, 0, frame.length);
+        return codec.decode();
+    }
+
+    @Benchmark
+    public byte[] writeDelimitedBaseline() throws IOException {
+        out.reset();
+        message.writeDelimitedTo(out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public Messages.Message parseDelimitedBaseline() throws IOException {
+        return Messages.Message.parseDelimitedFrom(new ByteArrayInputStream(frame));
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import com.thoughtworks.gauge.MessageCollector;
+import gauge.messages.Spec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fires proxied steps through the bridge against in-JVM {@link FakeRunner}s and reports throughput and latency percentiles.
+ * <p>
+ * Usage: {@code java -cp target/benchmarks.jar org.mdkt.gauge.bridge.LoadDriver [steps] [threads]},
+ * the fake runner and the bridge are configured with {@code -Dgauge_bridge_<key>=<value>} system properties.
+ * Each thread leases its own runner and every step is a scenario of its own.
+ * On Java 16+ the step proxy needs {@code --add-opens java.base/java.lang=ALL-UNNAMED}.
+ */
+public class LoadDriver {
+
+    public static void main(String[] args) throws Exception {
+        int steps = args.length > 0 ? parsePositive(args[0]) : 10000;
+        int threads = args.length > 1 ? parsePositive(args[1]) : 1;
+        if (args.length > 2 || steps <= 0 || threads <= 0) {
+            System.err.println("Usage: LoadDriver [steps > 0] [threads > 0]");
+            System.exit(2);
+        }
+        setDefault(BridgeConfig.FAKE_RUNNER, "true");
+        setDefault(BridgeConfig.POOL_SIZE, String.valueOf(threads));
+
+        BridgeMetrics metrics = new BridgeMetrics(new SimpleMeterRegistry());
+        GaugeBridgeRuntime runtime = new GaugeBridgeRuntime(metrics);
+        runtime.start();
+        try {
+            ProxyStepHandler handler = new ProxyStepHandler();
+            handler.runtime = runtime;
+            handler.metrics = metrics;
+            AspectJProxyFactory factory = new AspectJProxyFactory(new LoadSteps());
+            factory.setProxyTargetClass(true);
+            factory.addAspect(handler);
+            LoadSteps loadSteps = factory.getProxy();
+
+            run(runtime, loadSteps, Math.min(steps, 1000), threads);
+            long startTime = System.nanoTime();
+            Result result = run(runtime, loadSteps, steps, threads);
+            long elapsed = System.nanoTime() - startTime;
+            report(steps, threads, elapsed, result);
+        } finally {
+            runtime.finish();
+        }
+    }
+
+    /**
+     * @return the number, 0 when it is not a positive number
+     */
+    private static int parsePositive(String arg) {
+        try {
+            return Math.max(0, Integer.parseInt(arg));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void setDefault(String key, String value) {
+        String name = "gauge_bridge_" + key;
+        if (System.getenv(name) == null && System.getProperty(name) == null) {
+            System.setProperty(name, value);
+        }
+    }
+
+    private static Result run(GaugeBridgeRuntime runtime, LoadSteps loadSteps, int steps, int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicInteger remaining = new AtomicInteger(steps);
+        AtomicInteger failures = new AtomicInteger();
+        List<Future<long[]>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(executor.submit(() -> {
+                MessageCollector messageCollector = new MessageCollector();
+                long[] latencies = new long[steps];
+                int count = 0;
+                int i;
+                while ((i = remaining.decrementAndGet()) >= 0) {
+                    long startTime = System.nanoTime();
+                    try {
+                        loadSteps.loadStep("hello", i);
+                    } catch (RuntimeException e) {
+                        failures.incrementAndGet();
+                    }
+                    latencies[count++] = System.nanoTime() - startTime;
+                    // what the Java runner does at the end of a step and of a scenario
+                    messageCollector.addPendingMessagesTo(Spec.ProtoExecutionResult.getDefaultInstance());
+                    runtime.releaseRunners();
+                }
+                return Arrays.copyOf(latencies, count);
+            }));
+        }
+        long[] latencies = new long[steps];
+        int count = 0;
+        for (Future<long[]> worker : workers) {
+            long[] workerLatencies = worker.get();
+            System.arraycopy(workerLatencies, 0, latencies, count, workerLatencies.length);
+            count += workerLatencies.length;
+        }
+        executor.shutdown();
+        Arrays.sort(latencies);
+        return new Result(latencies, failures.get());
+    }
+
+    private static void report(int steps, int threads, long elapsedNanos, Result result) {
+        System.out.printf("steps:      %d on %d thread(s), %d failed%n", steps, threads, result.failures);
+        System.out.printf("throughput: %.1f steps/s%n", steps / (elapsedNanos / 1e9));
+        System.out.printf("latency:    p50 %d us, p99 %d us, p999 %d us, max %d us%n",
+                result.percentile(0.50), result.percentile(0.99), result.percentile(0.999),
+                TimeUnit.NANOSECONDS.toMicros(result.latencies[result.latencies.length - 1]));
+    }
+
+    private static class Result {
+        private final long[] latencies;
+        private final int failures;
+
+        private Result(long[] latencies, int failures) {
+            this.latencies = latencies;
+            this.failures = failures;
+        }
+
+        private long percentile(double p) {
+            int index = (int) Math.ceil(p * latencies.length) - 1;
+            return TimeUnit.NANOSECONDS.toMicros(latencies[Math.max(0, index)]);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import com.thoughtworks.gauge.StepValue;
+import gauge.messages.Messages;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Step text formatting and request building done by {@link ProxyStepHandler} for every proxied step
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProxyStepPlanBenchmark {
+    private ProxyStepPlan plan;
+    private Object[] args;
+    private long messageId;
+
+    @Setup
+    public void setUp() {
+        plan = new ProxyStepPlan(null, LanguageRunner.python, new StepValue("Python step with multiple arguments {} and {}",
+                "Python step with multiple arguments <s> and <i>", Arrays.asList("s", "i")));
+        args = new Object[]{"hello", 1};
+    }
+
+    @Benchmark
+    public Messages.ExecuteStepRequest executeStepRequest() {
+        return plan.newExecuteStepRequest(args);
+    }
+
+    @Benchmark
+    public void stepMessages(Blackhole blackhole) {
+        Messages.ExecuteStepRequest request = plan.newExecuteStepRequest(args);
+        blackhole.consume(plan.newPreStepMessage(++messageId, request));
+        blackhole.consume(plan.newExecuteStepMessage(++messageId, request));
+        blackhole.consume(plan.newPostStepMessage(++messageId));
+    }
+}
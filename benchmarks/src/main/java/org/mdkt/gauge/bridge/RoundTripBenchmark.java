@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import gauge.messages.Messages;
+import gauge.messages.Spec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request/response round trips through the event loop and a leased runner against an in-process echo peer,
+ * this is the path of {@link GaugeBridgeRuntime#executeAndGetStatus(LanguageRunner, Messages.Message)}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoundTripBenchmark {
+    private BridgeEventLoop eventLoop;
+    private RunnerPool pool;
+    private Socket peer;
+    private AtomicLong messageId;
+
+    @Setup
+    public void setUp() throws Exception {
+        eventLoop = new BridgeEventLoop();
+        eventLoop.start();
+        BridgeMetrics metrics = new BridgeMetrics(new SimpleMeterRegistry());
+        ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        CompletableFuture<RunnerChannel> connected = eventLoop.accept(server,
+                socketChannel -> new RunnerChannel(LanguageRunner.python, 0, socketChannel, eventLoop, metrics));
+        peer = new Socket("127.0.0.1", server.socket().getLocalPort());
+        peer.setTcpNoDelay(true);
+        Thread echo = new Thread(() -> echo(peer), "echo-peer");
+        echo.setDaemon(true);
+        echo.start();
+        pool = new RunnerPool(LanguageRunner.python);
+        pool.add(connected.get(10, TimeUnit.SECONDS));
+        messageId = new AtomicLong();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (RunnerChannel channel : pool.getChannels()) {
+            channel.markClosing();
+            channel.close();
+        }
+        peer.close();
+        eventLoop.stop();
+    }
+
+    @Benchmark
+    public Spec.ProtoExecutionResult executeStep() {
+        return GaugeBridgeRuntime.awaitStatus(pool.lease().send(BenchmarkMessages.newExecuteStep(messageId.incrementAndGet())));
+    }
+
+    /**
+     * The pre, execute and post messages of a step written at once, as done with step pipelining
+     */
+    @Benchmark
+    public Spec.ProtoExecutionResult pipelinedStep() {
+        List<CompletableFuture<Messages.Message>> responses = pool.lease().sendAll(Arrays.asList(
+                BenchmarkMessages.newExecuteStep(messageId.incrementAndGet()),
+                BenchmarkMessages.newExecuteStep(messageId.incrementAndGet()),
+                BenchmarkMessages.newExecuteStep(messageId.incrementAndGet())));
+        GaugeBridgeRuntime.awaitStatus(responses.get(0));
+        GaugeBridgeRuntime.awaitStatus(responses.get(1));
+        return GaugeBridgeRuntime.awaitStatus(responses.get(2));
+    }
+
+    private static void echo(Socket peer) {
+        FrameCodec codec = new FrameCodec();
+        try (Socket socket = peer) {
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            while (codec.readFrom(in) >= 0) {
+                Messages.Message request;
+                while ((request = codec.decode()) != null) {
+                    ByteBuffer data = codec.encode(BenchmarkMessages.newStatusResponse(request.getMessageId()));
+                    out.write(data.array(), data.arrayOffset(), data.limit());
+                }
+                out.flush();
+            }
+        } catch (IOException ignored) {
+            // the benchmark closed the connection
+        }
+    }
+}
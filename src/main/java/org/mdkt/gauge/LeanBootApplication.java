@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge;
+
+import com.thoughtworks.gauge.Step;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.aop.AopAutoConfiguration;
+import org.springframework.boot.autoconfigure.context.PropertyPlaceholderAutoConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+
+/**
+ * The Spring setup of {@link SpringClassInitializer} when there is no web server: the components of {@code org.mdkt.gauge},
+ * found through the component index when there is one, with AOP for the proxy steps and no other auto-configuration.
+ * <p>
+ * It is not a stereotype itself so it is never picked up by the component scan of {@link BootApplication}.
+ */
+@ComponentScan(basePackages = "org.mdkt.gauge",
+        excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = BootApplication.class))
+@ImportAutoConfiguration({PropertyPlaceholderAutoConfiguration.class, AopAutoConfiguration.class})
+public class LeanBootApplication {
+
+    @Bean
+    public static BeanFactoryPostProcessor lazyStepClasses() {
+        return LeanBootApplication::makeStepClassesLazy;
+    }
+
+    /**
+     * Step classes are created when Gauge first asks for them rather than all at startup
+     */
+    private static void makeStepClassesLazy(ConfigurableListableBeanFactory beanFactory) {
+        for (String name : beanFactory.getBeanDefinitionNames()) {
+            BeanDefinition definition = beanFactory.getBeanDefinition(name);
+            String className = definition.getBeanClassName();
+            if (className != null && ClassUtils.isPresent(className, beanFactory.getBeanClassLoader())
+                    && hasSteps(ClassUtils.resolveClassName(className, beanFactory.getBeanClassLoader()))) {
+                definition.setLazyInit(true);
+            }
+        }
+    }
+
+    private static boolean hasSteps(Class<?> type) {
+        for (Method method : type.getDeclaredMethods()) {
+            if (method.isAnnotationPresent(Step.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -21,9 +21,11 @@ package org.mdkt.gauge;
 
 import com.thoughtworks.gauge.BeforeScenario;
 import com.thoughtworks.gauge.ClassInitializer;
+import org.mdkt.gauge.bridge.BridgeConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Service;
 
@@ -32,7 +34,14 @@ public class SpringClassInitializer implements ClassInitializer {
     private ApplicationContext context;
 
     public SpringClassInitializer() {
-        context = SpringApplication.run(BootApplication.class);
+        if (BridgeConfig.getBoolean(BridgeConfig.WEB, false)) {
+            // full auto-configuration with an embedded server exposing the actuator endpoints
+            context = new SpringApplicationBuilder(BootApplication.class).run();
+        } else {
+            context = new SpringApplicationBuilder(LeanBootApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .run();
+        }
     }
 
     @Override
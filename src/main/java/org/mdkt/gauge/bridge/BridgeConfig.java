@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Bridge settings are read from environment variables which Gauge populates from {@code env/default/*.properties},
+ * or from system properties of the same name when the bridge runs outside of Gauge.
+ * <p>
+ * A runner specific value {@code gauge_bridge_<runner>_<key>} takes precedence over {@code gauge_bridge_<key>}
+ */
+public class BridgeConfig {
+    static final String PREFIX = "gauge_bridge_";
+    public static final String STARTUP_TIMEOUT = "startup_timeout";
+    public static final String VALIDATION_MODE = "validation_mode";
+    public static final String VALIDATION_CACHE = "validation_cache";
+    public static final String IMPLEMENTATION_DIR = "implementation_dir";
+    public static final String POOL_SIZE = "pool_size";
+    public static final String LEASE_TIMEOUT = "lease_timeout";
+    public static final String STEP_PIPELINING = "step_pipelining";
+    public static final String TRANSPORT = "transport";
+    public static final String LAZY_START = "lazy_start";
+    public static final String DAEMON = "daemon";
+    public static final String DAEMON_IDLE_TIMEOUT = "daemon_idle_timeout";
+    public static final String REQUEST_TIMEOUT = "request_timeout";
+    public static final String HEARTBEAT_INTERVAL = "heartbeat_interval";
+    public static final String HEARTBEAT_TIMEOUT = "heartbeat_timeout";
+    public static final String SPILL_THRESHOLD = "spill_threshold";
+    public static final int DEFAULT_SPILL_THRESHOLD = 1024 * 1024;
+    public static final String MEMO_CACHE_SIZE = "memo_cache_size";
+    public static final String SPARE_RUNNER = "spare_runner";
+    public static final String WEB = "web";
+    public static final String EXECUTOR = "executor";
+    public static final String AGENTS = "agents";
+    public static final String AGENT_POOL_SIZE = "agent_pool_size";
+    public static final String AGENT_TOKEN = "agent_token";
+    public static final String JOURNAL = "journal";
+    public static final String REPLAY = "replay";
+    public static final String FAKE_RUNNER = "fake_runner";
+    public static final String FAKE_RUNNER_LATENCY = "fake_runner_latency";
+    public static final String FAKE_RUNNER_PAYLOAD = "fake_runner_payload";
+    public static final String FAKE_RUNNER_FAILURE_RATE = "fake_runner_failure_rate";
+    public static final String FAKE_RUNNER_HOOK_LATENCY = "fake_runner_hook_latency";
+    public static final String FAKE_RUNNER_HOOK_FAILURE_RATE = "fake_runner_hook_failure_rate";
+    public static final String FAKE_RUNNER_VALIDATION_LATENCY = "fake_runner_validation_latency";
+    public static final String FAKE_RUNNER_VALIDATION_FAILURE_RATE = "fake_runner_validation_failure_rate";
+
+    public static String get(String key, String defaultValue) {
+        String value = read(PREFIX + key);
+        if (StringUtils.isEmpty(value)) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    public static String get(LanguageRunner lr, String key, String defaultValue) {
+        String value = read(PREFIX + lr.name() + "_" + key);
+        if (StringUtils.isEmpty(value)) {
+            return get(key, defaultValue);
+        }
+        return value.trim();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        return parseInt(key, get(key, null), defaultValue);
+    }
+
+    public static int getInt(LanguageRunner lr, String key, int defaultValue) {
+        return parseInt(key, get(lr, key, null), defaultValue);
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = get(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    public static boolean getBoolean(LanguageRunner lr, String key, boolean defaultValue) {
+        String value = get(lr, key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    public static double getDouble(LanguageRunner lr, String key, double defaultValue) {
+        String value = get(lr, key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException(PREFIX + key + " must be a number but was " + value, e);
+        }
+    }
+
+    private static String read(String name) {
+        String value = System.getenv(name);
+        return StringUtils.isEmpty(value) ? System.getProperty(name) : value;
+    }
+
+    private static int parseInt(String key, String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException(PREFIX + key + " must be a number but was " + value, e);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A single thread owning the connections of all runners: it accepts them, reads and decodes their frames
+ * and completes the requests waiting for them. The number of threads stays the same however many runners are connected.
+ * <p>
+ * Responses are completed on the event loop thread so callbacks attached to them must not block.
+ * About once a second the loop also expires the requests of all runners and sends heartbeats to idle ones.
+ * A failure while handling a runner breaks that runner only, the loop keeps serving the others.
+ */
+public class BridgeEventLoop {
+    private static final Logger logger = LoggerFactory.getLogger(BridgeEventLoop.class);
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final long TIMEOUT_CHECK_INTERVAL = 1000;
+    private final Selector selector;
+    private final Queue<Runnable> tasks;
+    private final ByteBuffer readBuffer;
+    private final Thread thread;
+    private volatile boolean running;
+
+    public BridgeEventLoop() {
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new RuntimeException("opening selector error", e);
+        }
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        this.thread = new Thread(this::run, "bridge-io");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Stop the loop, the connections still registered are closed and their pending requests fail
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Wait for the runner to connect to the server, the server is closed after the first connection
+     *
+     * @param channelFactory creates the runner channel of the accepted connection
+     * @return a future completed once the runner is connected
+     */
+    public CompletableFuture<RunnerChannel> accept(ServerSocketChannel server, Function<SocketChannel, RunnerChannel> channelFactory) {
+        CompletableFuture<RunnerChannel> connected = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                server.configureBlocking(false);
+                server.register(selector, SelectionKey.OP_ACCEPT, new PendingAccept(channelFactory, connected));
+            } catch (IOException e) {
+                connected.completeExceptionally(e);
+            }
+        });
+        return connected;
+    }
+
+    /**
+     * Hand over a connection opened by the bridge itself
+     *
+     * @param channelFactory creates the runner channel of the connection
+     * @return a future completed once the connection is registered
+     */
+    public CompletableFuture<RunnerChannel> register(SocketChannel socketChannel, Function<SocketChannel, RunnerChannel> channelFactory) {
+        CompletableFuture<RunnerChannel> registered = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                socketChannel.configureBlocking(false);
+                RunnerChannel channel = channelFactory.apply(socketChannel);
+                socketChannel.register(selector, SelectionKey.OP_READ, channel);
+                registered.complete(channel);
+            } catch (IOException | RuntimeException e) {
+                registered.completeExceptionally(e);
+            }
+        });
+        return registered;
+    }
+
+    /**
+     * Ask the event loop to drain the pending writes of the channel once its socket is writable
+     */
+    void requestWrite(RunnerChannel channel) {
+        execute(() -> {
+            SelectionKey key = channel.getSocketChannel().keyFor(selector);
+            if (key != null && key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        });
+    }
+
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void run() {
+        long lastTimeoutCheck = System.nanoTime();
+        while (running) {
+            try {
+                selector.select(TIMEOUT_CHECK_INTERVAL);
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        logger.error("event loop task error", e);
+                    }
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        onAcceptable(key);
+                    } else {
+                        onReady(key, (RunnerChannel) key.attachment());
+                    }
+                }
+                long now = System.nanoTime();
+                if (now - lastTimeoutCheck >= TimeUnit.MILLISECONDS.toNanos(TIMEOUT_CHECK_INTERVAL)) {
+                    lastTimeoutCheck = now;
+                    checkTimeouts(now);
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.error("event loop error", e);
+            }
+        }
+        closeAll();
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.warn("closing selector error: {}", e.getMessage());
+        }
+    }
+
+    private void closeAll() {
+        IOException stopped = new IOException("event loop stopped");
+        for (SelectionKey key : selector.keys()) {
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                logger.warn("closing channel error: {}", e.getMessage());
+            }
+            Object attachment = key.attachment();
+            if (attachment instanceof RunnerChannel) {
+                ((RunnerChannel) attachment).close();
+                ((RunnerChannel) attachment).failAll(stopped);
+            } else if (attachment instanceof PendingAccept) {
+                ((PendingAccept) attachment).connected.completeExceptionally(stopped);
+            }
+        }
+    }
+
+    private void checkTimeouts(long now) {
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid() && key.attachment() instanceof RunnerChannel) {
+                try {
+                    ((RunnerChannel) key.attachment()).checkTimeouts(now);
+                } catch (RuntimeException e) {
+                    logger.error("[{}] checking timeouts error", key.attachment(), e);
+                }
+            }
+        }
+    }
+
+    private void onAcceptable(SelectionKey key) {
+        ServerSocketChannel server = (ServerSocketChannel) key.channel();
+        PendingAccept pending = (PendingAccept) key.attachment();
+        try {
+            SocketChannel socketChannel = server.accept();
+            if (socketChannel == null) {
+                return;
+            }
+            key.cancel();
+            server.close();
+            socketChannel.configureBlocking(false);
+            RunnerChannel channel = pending.channelFactory.apply(socketChannel);
+            socketChannel.register(selector, SelectionKey.OP_READ, channel);
+            pending.connected.complete(channel);
+        } catch (IOException | RuntimeException e) {
+            pending.connected.completeExceptionally(e);
+        }
+    }
+
+    private void onReady(SelectionKey key, RunnerChannel channel) {
+        try {
+            if (key.isReadable()) {
+                readBuffer.clear();
+                int read = channel.getSocketChannel().read(readBuffer);
+                if (read < 0) {
+                    key.cancel();
+                    channel.onClosed(new EOFException("end of stream"));
+                    return;
+                }
+                readBuffer.flip();
+                channel.onReceived(readBuffer);
+            }
+            if (key.isValid() && key.isWritable() && channel.flushPendingWrites()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            }
+        } catch (IOException e) {
+            key.cancel();
+            try {
+                channel.onClosed(e);
+            } catch (RuntimeException handlerError) {
+                logger.error("[{}] broken runner handler error", channel, handlerError);
+            }
+        } catch (RuntimeException e) {
+            logger.error("[{}] runner channel error, closing it", channel, e);
+            key.cancel();
+            try {
+                channel.onBroken(e);
+            } catch (RuntimeException handlerError) {
+                logger.error("[{}] broken runner handler error", channel, handlerError);
+            }
+        }
+    }
+
+    private static class PendingAccept {
+        private final Function<SocketChannel, RunnerChannel> channelFactory;
+        private final CompletableFuture<RunnerChannel> connected;
+
+        PendingAccept(Function<SocketChannel, RunnerChannel> channelFactory, CompletableFuture<RunnerChannel> connected) {
+            this.channelFactory = channelFactory;
+            this.connected = connected;
+        }
+    }
+}
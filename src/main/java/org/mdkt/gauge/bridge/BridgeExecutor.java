@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+/**
+ * Runs the blocking tasks of the bridge: runner launchers waiting for their process, startups and restarts.
+ * The executor is chosen with {@code gauge_bridge_executor}
+ */
+public interface BridgeExecutor {
+
+    /**
+     * Run the task in the background on a thread with the given name
+     */
+    void execute(String name, Runnable task);
+
+    /**
+     * Stop the idle threads, running tasks are not interrupted
+     */
+    void shutdown();
+
+    static BridgeExecutor fromConfig() {
+        String executor = BridgeConfig.get(BridgeConfig.EXECUTOR, PlatformThreadExecutor.NAME);
+        switch (executor.toLowerCase()) {
+            case PlatformThreadExecutor.NAME:
+                return new PlatformThreadExecutor();
+            case VirtualThreadExecutor.NAME:
+                return new VirtualThreadExecutor();
+            default:
+                throw new RuntimeException("unknown executor " + executor);
+        }
+    }
+}
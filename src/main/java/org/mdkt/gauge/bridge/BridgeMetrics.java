@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gauge.messages.Messages;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Measurement;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer instrumentation of the bridge, registered in the {@link MeterRegistry} of the Spring context
+ * or in a private one when the context has none.
+ * <p>
+ * All meters are named {@code gauge.bridge.*} and tagged by {@code runner}.
+ */
+@Component
+public class BridgeMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(BridgeMetrics.class);
+    private static final String PREFIX = "gauge.bridge.";
+    private static final String SUMMARY_FILE = "target/gauge/metrics/bridge-metrics.json";
+    private final MeterRegistry registry;
+    private final Map<LanguageRunner, Map<Messages.Message.MessageType, Timer>> requestTimers;
+    private final Map<LanguageRunner, DistributionSummary[]> frameSizes;
+    private final Map<ProxyStepPlan, Timer[]> stepTimers;
+
+    public enum Direction {
+        sent, received
+    }
+
+    public enum StepPhase {
+        pre, execute, post
+    }
+
+    @Autowired
+    public BridgeMetrics(ObjectProvider<MeterRegistry> registry) {
+        this(registry.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
+    public BridgeMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.requestTimers = new ConcurrentHashMap<>();
+        this.frameSizes = new ConcurrentHashMap<>();
+        this.stepTimers = new ConcurrentHashMap<>();
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Time from the write of a request to the read of its response
+     */
+    public void recordRoundTrip(LanguageRunner lr, Messages.Message.MessageType type, long nanos) {
+        requestTimers.computeIfAbsent(lr, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(type, t -> Timer.builder(PREFIX + "request")
+                        .description("Round trip of a request to a runner")
+                        .tag("runner", lr.name())
+                        .tag("type", t.name())
+                        .publishPercentileHistogram()
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordFrameSize(LanguageRunner lr, Direction direction, int bytes) {
+        frameSizes.computeIfAbsent(lr, k -> {
+            DistributionSummary[] summaries = new DistributionSummary[Direction.values().length];
+            for (Direction d : Direction.values()) {
+                summaries[d.ordinal()] = DistributionSummary.builder(PREFIX + "frame.size")
+                        .description("Size of the messages exchanged with a runner")
+                        .baseUnit("bytes")
+                        .tag("runner", lr.name())
+                        .tag("direction", d.name())
+                        .register(registry);
+            }
+            return summaries;
+        })[direction.ordinal()].record(bytes);
+    }
+
+    /**
+     * Time a proxied step spends waiting for the response of one of its phases, pre and post are the hook overhead
+     */
+    public void recordStepWait(ProxyStepPlan plan, StepPhase phase, long nanos) {
+        stepTimers.computeIfAbsent(plan, p -> {
+            Timer[] timers = new Timer[StepPhase.values().length];
+            for (StepPhase sp : StepPhase.values()) {
+                timers[sp.ordinal()] = Timer.builder(PREFIX + "step.wait")
+                        .description("Time a proxied step waits for the runner")
+                        .tag("runner", p.getLanguageRunner().name())
+                        .tag("step", p.getStepText())
+                        .tag("phase", sp.name())
+                        .register(registry);
+            }
+            return timers;
+        })[phase.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordMemoized(ProxyStepPlan plan, boolean hit) {
+        registry.counter(PREFIX + "step.memoized", "runner", plan.getLanguageRunner().name(),
+                "step", plan.getStepText(), "result", hit ? "hit" : "miss").increment();
+    }
+
+    public void recordStartup(LanguageRunner lr, long nanos) {
+        registry.timer(PREFIX + "runner.startup", "runner", lr.name()).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordValidation(LanguageRunner lr, long nanos) {
+        registry.timer(PREFIX + "runner.validation", "runner", lr.name()).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordRestart(LanguageRunner lr) {
+        registry.counter(PREFIX + "runner.restarts", "runner", lr.name()).increment();
+    }
+
+    public void registerInFlight(RunnerPool pool) {
+        Gauge.builder(PREFIX + "requests.in.flight", pool, p -> p.getChannels().stream().mapToInt(RunnerChannel::getInFlightCount).sum())
+                .description("Requests waiting for the response of a runner")
+                .tag("runner", pool.getLanguageRunner().name())
+                .register(registry);
+    }
+
+    /**
+     * Write the current value of all bridge meters to the summary file
+     */
+    public void writeSummary() {
+        List<MeterSummary> meters = new ArrayList<>();
+        for (Meter meter : registry.getMeters()) {
+            Meter.Id id = meter.getId();
+            if (!id.getName().startsWith(PREFIX)) {
+                continue;
+            }
+            MeterSummary summary = new MeterSummary();
+            summary.name = id.getName();
+            summary.tags = new TreeMap<>();
+            for (Tag tag : id.getTags()) {
+                summary.tags.put(tag.getKey(), tag.getValue());
+            }
+            summary.measurements = new TreeMap<>();
+            for (Measurement measurement : meter.measure()) {
+                summary.measurements.put(measurement.getStatistic().name().toLowerCase(), measurement.getValue());
+            }
+            meters.add(summary);
+        }
+        File file = new File(Common.getProjectRoot(), SUMMARY_FILE);
+        try {
+            file.getParentFile().mkdirs();
+            new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, meters);
+            logger.info("Bridge metrics written to {}", file);
+        } catch (IOException e) {
+            logger.warn("Unable to write bridge metrics {}: {}", file, e.getMessage());
+        }
+    }
+
+    static class MeterSummary {
+        public String name;
+        public Map<String, String> tags;
+        public Map<String, Double> measurements;
+    }
+}
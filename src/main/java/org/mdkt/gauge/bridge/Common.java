@@ -24,11 +24,17 @@ import org.springframework.util.StringUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * This is a partial port of {@code github.com/getgauge/common/common.go}
@@ -39,6 +45,9 @@ public class Common {
     private static final String PRODUCT_NAME = "gauge";
     private static final String DOT_GAUGE = ".gauge";
     private static final String PLUGINS = "plugins";
+    private static final String GAUGE_PROJECT_ROOT = "GAUGE_PROJECT_ROOT";
+    private static final String SPILL_DIR = "target/gauge/spill";
+    private static final String JOURNAL_DIR = "target/gauge/journal";
 
     public static String getGaugeHomeDirectory() {
         String customPluginRoot = System.getenv(GAUGE_HOME);
@@ -101,4 +110,76 @@ public class Common {
         }
         throw new RuntimeException("Failed to find the implementation for: " + language + ". " + languageJson.getAbsolutePath() + " does not exist");
     }
+
+    public static String getPluginVersion(String pluginName) {
+        return new File(getInstallDir(pluginName, "")).getName();
+    }
+
+    /**
+     * Directory of the frames, messages and screenshots too large to be kept in memory
+     */
+    public static File getSpillDir() {
+        return new File(getProjectRoot(), SPILL_DIR);
+    }
+
+    /**
+     * Delete the spilled files last modified before the given time, the ones of a previous run are never read again.
+     * Files of the runners of a parallel execution started at the same time are kept.
+     */
+    public static void clearSpillDir(long before) {
+        File[] files = getSpillDir().listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (f.isFile() && f.lastModified() < before) {
+                f.delete();
+            }
+        }
+    }
+
+    /**
+     * Directory of the journals of the messages exchanged with the runners
+     */
+    public static File getJournalDir() {
+        return new File(getProjectRoot(), JOURNAL_DIR);
+    }
+
+    public static File getProjectRoot() {
+        String projectRoot = System.getenv(GAUGE_PROJECT_ROOT);
+        if (StringUtils.isEmpty(projectRoot)) {
+            return new File(System.getProperty("user.dir"));
+        }
+        return new File(projectRoot);
+    }
+
+    /**
+     * SHA-256 over the relative path and content of every file in the directory.
+     * Compiled python files are ignored as they change without the sources changing.
+     */
+    public static String hashDirectory(File dir) {
+        if (!dir.isDirectory()) {
+            return "";
+        }
+        Path root = dir.toPath();
+        try (Stream<Path> paths = Files.walk(root)) {
+            List<Path> files = paths
+                    .filter(Files::isRegularFile)
+                    .filter(f -> !f.toString().endsWith(".pyc"))
+                    .sorted()
+                    .collect(Collectors.toList());
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Path f : files) {
+                digest.update(root.relativize(f).toString().getBytes(StandardCharsets.UTF_8));
+                digest.update(Files.readAllBytes(f));
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new RuntimeException("Unable to hash " + dir, e);
+        }
+    }
 }
@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import com.thoughtworks.gauge.StepValue;
+import gauge.messages.Messages;
+import gauge.messages.Spec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A language runner running in the bridge JVM, it speaks the runner protocol but does not execute anything.
+ * <p>
+ * An executed step answers after the configured latency with a message of the configured size and fails at
+ * the configured rate. Step validations and step hooks have their own latency and failure rate.
+ * It is used to measure the bridge without any Gauge or runner installed.
+ */
+public class FakeRunner {
+    private static final Logger logger = LoggerFactory.getLogger(FakeRunner.class);
+    private static final Pattern STEP_PARAMETER = Pattern.compile("<([^>]*)>");
+    private final Behavior steps;
+    private final String payload;
+    private final Behavior hooks;
+    private final Behavior validations;
+
+    /**
+     * A runner whose step validations and step hooks answer at once and succeed
+     */
+    public FakeRunner(long latencyMicros, int payloadSize, double failureRate) {
+        this(new Behavior(latencyMicros, failureRate), payloadSize, Behavior.NONE, Behavior.NONE);
+    }
+
+    FakeRunner(Behavior steps, int payloadSize, Behavior hooks, Behavior validations) {
+        this.steps = steps;
+        char[] chars = new char[Math.max(0, payloadSize)];
+        Arrays.fill(chars, 'x');
+        this.payload = new String(chars);
+        this.hooks = hooks;
+        this.validations = validations;
+    }
+
+    public static FakeRunner fromConfig(LanguageRunner lr) {
+        return new FakeRunner(
+                new Behavior(BridgeConfig.getInt(lr, BridgeConfig.FAKE_RUNNER_LATENCY, 0),
+                        BridgeConfig.getDouble(lr, BridgeConfig.FAKE_RUNNER_FAILURE_RATE, 0)),
+                BridgeConfig.getInt(lr, BridgeConfig.FAKE_RUNNER_PAYLOAD, 0),
+                new Behavior(BridgeConfig.getInt(lr, BridgeConfig.FAKE_RUNNER_HOOK_LATENCY, 0),
+                        BridgeConfig.getDouble(lr, BridgeConfig.FAKE_RUNNER_HOOK_FAILURE_RATE, 0)),
+                new Behavior(BridgeConfig.getInt(lr, BridgeConfig.FAKE_RUNNER_VALIDATION_LATENCY, 0),
+                        BridgeConfig.getDouble(lr, BridgeConfig.FAKE_RUNNER_VALIDATION_FAILURE_RATE, 0)));
+    }
+
+    /**
+     * Parse a step text the way Gauge does for steps without tables, as there is no Gauge API to ask
+     */
+    public static StepValue parseStepValue(String stepText) {
+        Matcher matcher = STEP_PARAMETER.matcher(stepText);
+        List<String> parameters = new ArrayList<>();
+        while (matcher.find()) {
+            parameters.add(matcher.group(1));
+        }
+        return new StepValue(matcher.replaceAll("{}"), stepText, parameters);
+    }
+
+    /**
+     * Connect to the bridge with the environment given to a runner process and answer its requests until
+     * the connection is closed or the runner is killed
+     */
+    public void run(Map<String, String> runnerEnvironment) {
+        serve("fake runner", runnerEnvironment, this::respond);
+    }
+
+    /**
+     * Connect to the bridge with the environment given to a runner process and write the response to each request
+     * until the connection is closed or the runner is killed
+     */
+    static void serve(String name, Map<String, String> runnerEnvironment, UnaryOperator<Messages.Message> responder) {
+        FrameCodec codec = new FrameCodec();
+        try (SocketChannel channel = connect(name, runnerEnvironment)) {
+            InputStream in = Channels.newInputStream(channel);
+            OutputStream out = Channels.newOutputStream(channel);
+            while (codec.readFrom(in) >= 0) {
+                Messages.Message request;
+                while ((request = codec.decode()) != null) {
+                    ByteBuffer data = codec.encode(responder.apply(request));
+                    out.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+                    if (request.getMessageType() == Messages.Message.MessageType.KillProcessRequest) {
+                        out.flush();
+                        return;
+                    }
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            logger.debug("{} disconnected: {}", name, e.getMessage());
+        }
+    }
+
+    private static SocketChannel connect(String name, Map<String, String> runnerEnvironment) throws IOException {
+        String socket = runnerEnvironment.get(UnixDomainSocketTransport.GAUGE_INTERNAL_SOCKET);
+        if (socket != null) {
+            return UnixDomainSocketTransport.connect(socket);
+        }
+        String port = runnerEnvironment.get(TcpTransport.GAUGE_INTERNAL_PORT);
+        if (port == null) {
+            throw new RuntimeException(name + " is not given where to connect in " + runnerEnvironment.keySet());
+        }
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(port)));
+        channel.socket().setTcpNoDelay(true);
+        return channel;
+    }
+
+    Messages.Message respond(Messages.Message request) {
+        Messages.Message.Builder response = Messages.Message.newBuilder().setMessageId(request.getMessageId());
+        switch (request.getMessageType()) {
+            case StepValidateRequest:
+                Messages.StepValidateResponse.Builder validation = Messages.StepValidateResponse.newBuilder().setIsValid(true);
+                if (validations.fails()) {
+                    validation.setIsValid(false)
+                            .setErrorType(Messages.StepValidateResponse.ErrorType.STEP_IMPLEMENTATION_NOT_FOUND)
+                            .setErrorMessage("Fake validation failure of " + request.getStepValidateRequest().getStepText());
+                }
+                return response.setMessageType(Messages.Message.MessageType.StepValidateResponse)
+                        .setStepValidateResponse(validation)
+                        .build();
+            case StepNameRequest:
+                return response.setMessageType(Messages.Message.MessageType.StepNameResponse)
+                        .setStepNameResponse(Messages.StepNameResponse.newBuilder().setIsStepPresent(false))
+                        .build();
+            case StepNamesRequest:
+                return response.setMessageType(Messages.Message.MessageType.StepNamesResponse)
+                        .setStepNamesResponse(Messages.StepNamesResponse.newBuilder())
+                        .build();
+            case ExecuteStep:
+                return response.setMessageType(Messages.Message.MessageType.ExecutionStatusResponse)
+                        .setExecutionStatusResponse(Messages.ExecutionStatusResponse.newBuilder()
+                                .setExecutionResult(executeStep(request.getExecuteStepRequest())))
+                        .build();
+            case StepExecutionStarting:
+            case StepExecutionEnding:
+                return response.setMessageType(Messages.Message.MessageType.ExecutionStatusResponse)
+                        .setExecutionStatusResponse(Messages.ExecutionStatusResponse.newBuilder()
+                                .setExecutionResult(executeHook(request.getMessageType())))
+                        .build();
+            default:
+                return response.setMessageType(Messages.Message.MessageType.ExecutionStatusResponse)
+                        .setExecutionStatusResponse(Messages.ExecutionStatusResponse.newBuilder()
+                                .setExecutionResult(Spec.ProtoExecutionResult.newBuilder().setFailed(false)))
+                        .build();
+        }
+    }
+
+    private Spec.ProtoExecutionResult executeStep(Messages.ExecuteStepRequest request) {
+        long startTime = System.nanoTime();
+        Spec.ProtoExecutionResult.Builder result = Spec.ProtoExecutionResult.newBuilder();
+        if (!payload.isEmpty()) {
+            result.addMessage(payload);
+        }
+        if (steps.fails()) {
+            result.setFailed(true).setErrorMessage("Fake failure of " + request.getActualStepText());
+        }
+        return result.setExecutionTime(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)).build();
+    }
+
+    private Spec.ProtoExecutionResult executeHook(Messages.Message.MessageType type) {
+        long startTime = System.nanoTime();
+        Spec.ProtoExecutionResult.Builder result = Spec.ProtoExecutionResult.newBuilder();
+        if (hooks.fails()) {
+            result.setFailed(true).setErrorMessage("Fake failure of the hooks of " + type);
+        }
+        return result.setExecutionTime(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)).build();
+    }
+
+    /**
+     * How long a kind of request takes and how often it fails
+     */
+    static class Behavior {
+        static final Behavior NONE = new Behavior(0, 0);
+        private final long latencyMicros;
+        private final double failureRate;
+
+        Behavior(long latencyMicros, double failureRate) {
+            this.latencyMicros = latencyMicros;
+            this.failureRate = failureRate;
+        }
+
+        /**
+         * Wait for the latency
+         *
+         * @return true if the request fails
+         */
+        boolean fails() {
+            if (latencyMicros > 0) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+            }
+            return failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate;
+        }
+    }
+}
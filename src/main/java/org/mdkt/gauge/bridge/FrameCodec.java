@@ -0,0 +1,399 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.protobuf.WireFormat;
+import gauge.messages.Messages;
+import gauge.messages.Spec;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Encoder and decoder of the varint delimited frames exchanged with a runner.
+ * <p>
+ * One instance is used per connection, its buffers are reused for every message. The read buffer persists across
+ * reads so a frame split over several reads and several frames arriving in one read are both decoded.
+ * Encoding and decoding are independent but each side must only be used by one thread at a time.
+ * <p>
+ * A frame larger than the spill threshold is written to a temp file while it is received, so the read buffer does not
+ * grow to the size of the frame. The file is then mapped and the step messages, error and screenshots of an
+ * ExecutionStatusResponse are passed along as slices of the mapping instead of heap copies.
+ */
+public class FrameCodec {
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+    private static final int MAX_VARINT_SIZE = 10;
+    private ByteBuffer readBuffer;
+    private int readIndex;
+    private ByteBuffer writeBuffer;
+    private final int spillThreshold;
+    private final File spillDir;
+    private File spillFile;
+    private FileChannel spillChannel;
+    private long spillRemaining;
+    private volatile boolean closed;
+
+    public FrameCodec() {
+        this(Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * @param spillThreshold frames larger than this number of bytes are received in a temp file
+     * @param spillDir       directory of the temp files
+     */
+    public FrameCodec(int spillThreshold, File spillDir) {
+        this.readBuffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+        this.writeBuffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+        this.spillThreshold = spillThreshold;
+        this.spillDir = spillDir;
+    }
+
+    /**
+     * Encode the message into the write buffer
+     *
+     * @return the write buffer ready to be drained, only valid until the next encode
+     */
+    public ByteBuffer encode(Messages.Message msg) throws IOException {
+        return encode(Collections.singletonList(msg));
+    }
+
+    /**
+     * Encode all messages back to back into the write buffer
+     *
+     * @return the write buffer ready to be drained, only valid until the next encode
+     */
+    public ByteBuffer encode(List<Messages.Message> msgs) throws IOException {
+        int required = 0;
+        for (Messages.Message msg : msgs) {
+            int size = msg.getSerializedSize();
+            required += CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+        }
+        if (writeBuffer.capacity() < required) {
+            writeBuffer = ByteBuffer.allocate(Math.max(required, writeBuffer.capacity() * 2));
+        }
+        writeBuffer.clear();
+        CodedOutputStream cos = CodedOutputStream.newInstance(writeBuffer.array(), writeBuffer.arrayOffset(), required);
+        for (Messages.Message msg : msgs) {
+            cos.writeUInt32NoTag(msg.getSerializedSize());
+            msg.writeTo(cos);
+        }
+        cos.flush();
+        writeBuffer.limit(required);
+        return writeBuffer;
+    }
+
+    /**
+     * Append received bytes to the read buffer
+     */
+    public void feed(ByteBuffer src) {
+        ensureWritable(src.remaining());
+        readBuffer.put(src);
+    }
+
+    public void feed(byte[] bytes, int offset, int length) {
+        ensureWritable(length);
+        readBuffer.put(bytes, offset, length);
+    }
+
+    /**
+     * Read from the stream straight into the read buffer
+     *
+     * @return the number of bytes read, -1 at the end of the stream
+     */
+    public int readFrom(InputStream in) throws IOException {
+        ensureWritable(1);
+        int read = in.read(readBuffer.array(), readBuffer.arrayOffset() + readBuffer.position(), readBuffer.remaining());
+        if (read > 0) {
+            readBuffer.position(readBuffer.position() + read);
+        }
+        return read;
+    }
+
+    /**
+     * @return the next complete message, null if more bytes are needed
+     */
+    public Messages.Message decode() throws IOException {
+        if (spillFile != null || closed) {
+            return continueSpill();
+        }
+        byte[] array = readBuffer.array();
+        int offset = readBuffer.arrayOffset();
+        int end = readBuffer.position();
+        int index = readIndex;
+        long size = 0;
+        int shift = 0;
+        while (true) {
+            if (index == end) {
+                return null;
+            }
+            byte b = array[offset + index++];
+            size |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+            if (shift >= MAX_VARINT_SIZE * 7) {
+                throw new IOException("malformed frame length");
+            }
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("frame of " + size + " bytes is too large");
+        }
+        if (end - index < size) {
+            if (size > spillThreshold) {
+                readIndex = index;
+                startSpill(size);
+                return continueSpill();
+            }
+            return null;
+        }
+        CodedInputStream cis = CodedInputStream.newInstance(array, offset + index, (int) size);
+        cis.setSizeLimit(Integer.MAX_VALUE);
+        Messages.Message msg = Messages.Message.parseFrom(cis);
+        readIndex = index + (int) size;
+        if (readIndex == end) {
+            readBuffer.clear();
+            readIndex = 0;
+        }
+        return msg;
+    }
+
+    private synchronized void startSpill(long size) throws IOException {
+        if (closed) {
+            throw new IOException("frame codec is closed");
+        }
+        spillDir.mkdirs();
+        spillFile = File.createTempFile("frame-", ".bin", spillDir);
+        spillChannel = new FileOutputStream(spillFile).getChannel();
+        spillRemaining = size;
+    }
+
+    /**
+     * Spilling is guarded as the connection can be closed by another thread while a frame is received
+     */
+    private synchronized Messages.Message continueSpill() throws IOException {
+        if (closed) {
+            throw new IOException("frame codec is closed");
+        }
+        return spill() ? parseSpilled() : null;
+    }
+
+    /**
+     * Delete the file of a frame cut by a lost connection, it is never parsed
+     */
+    public synchronized void close() {
+        closed = true;
+        if (spillFile == null) {
+            return;
+        }
+        try {
+            spillChannel.close();
+        } catch (IOException e) {
+            // the file is deleted anyway
+        }
+        spillFile.delete();
+        spillChannel = null;
+        spillFile = null;
+    }
+
+    /**
+     * Move the buffered bytes of the frame being spilled to its file
+     *
+     * @return true once the whole frame is in the file
+     */
+    private boolean spill() throws IOException {
+        int length = (int) Math.min(readBuffer.position() - readIndex, spillRemaining);
+        ByteBuffer data = ByteBuffer.wrap(readBuffer.array(), readBuffer.arrayOffset() + readIndex, length);
+        while (data.hasRemaining()) {
+            spillChannel.write(data);
+        }
+        readIndex += length;
+        spillRemaining -= length;
+        if (readIndex == readBuffer.position()) {
+            readBuffer.clear();
+            readIndex = 0;
+        }
+        return spillRemaining == 0;
+    }
+
+    private Messages.Message parseSpilled() throws IOException {
+        File file = spillFile;
+        spillChannel.close();
+        spillChannel = null;
+        spillFile = null;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // the mapping outlives the channel and the file, it is released once the message is collected
+            ByteString frame = UnsafeByteOperations.unsafeWrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            Messages.Message.Builder message = Messages.Message.newBuilder();
+            mergeAliased(frame, message, (field, bytes) -> field == Messages.Message.EXECUTIONSTATUSRESPONSE_FIELD_NUMBER
+                    && mergeStatus(bytes, message.getExecutionStatusResponseBuilder()));
+            return message.build();
+        } finally {
+            if (!file.delete()) {
+                // a mapped file cannot be deleted on Windows, the spill directory is cleared by the next run
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    private static boolean mergeStatus(ByteString bytes, Messages.ExecutionStatusResponse.Builder status) throws IOException {
+        mergeAliased(bytes, status, (field, resultBytes) -> field == Messages.ExecutionStatusResponse.EXECUTIONRESULT_FIELD_NUMBER
+                && mergeResult(resultBytes, status.getExecutionResultBuilder()));
+        return true;
+    }
+
+    private static boolean mergeResult(ByteString bytes, Spec.ProtoExecutionResult.Builder result) throws IOException {
+        mergeAliased(bytes, result, (field, value) -> {
+            switch (field) {
+                case Spec.ProtoExecutionResult.MESSAGE_FIELD_NUMBER:
+                    result.addMessageBytes(value);
+                    return true;
+                case Spec.ProtoExecutionResult.ERRORMESSAGE_FIELD_NUMBER:
+                    result.setErrorMessageBytes(value);
+                    return true;
+                case Spec.ProtoExecutionResult.STACKTRACE_FIELD_NUMBER:
+                    result.setStackTraceBytes(value);
+                    return true;
+                case Spec.ProtoExecutionResult.SCREENSHOTS_FIELD_NUMBER:
+                    result.addScreenshots(value);
+                    return true;
+                case Spec.ProtoExecutionResult.FAILURESCREENSHOT_FIELD_NUMBER:
+                    result.setFailureScreenshot(value);
+                    return true;
+                default:
+                    return false;
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Reader of the length delimited fields of a message parsed by {@link #mergeAliased}
+     */
+    private interface AliasedFieldReader {
+        /**
+         * @param bytes content of the field, backed by the mapped frame
+         * @return false to parse the field as usual
+         */
+        boolean read(int field, ByteString bytes) throws IOException;
+    }
+
+    /**
+     * Merge the serialized message into the builder. Its length delimited fields are handed to the reader as slices
+     * of the data, the fields the reader leaves are parsed as usual.
+     * The fields are walked here as CodedInputStream copies a direct buffer to the heap when it cannot alias it.
+     */
+    private static void mergeAliased(ByteString data, Message.Builder builder, AliasedFieldReader reader) throws IOException {
+        ByteBuffer in = data.asReadOnlyByteBuffer();
+        int base = in.position();
+        ByteString others = ByteString.EMPTY;
+        while (in.hasRemaining()) {
+            int start = in.position();
+            int tag = (int) readVarint(in);
+            switch (WireFormat.getTagWireType(tag)) {
+                case WireFormat.WIRETYPE_VARINT:
+                    readVarint(in);
+                    break;
+                case WireFormat.WIRETYPE_FIXED64:
+                    skip(in, 8);
+                    break;
+                case WireFormat.WIRETYPE_FIXED32:
+                    skip(in, 4);
+                    break;
+                case WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                    int length = (int) readVarint(in);
+                    ByteBuffer field = in.slice();
+                    skip(in, length);
+                    field.limit(length);
+                    if (reader.read(WireFormat.getTagFieldNumber(tag), UnsafeByteOperations.unsafeWrap(field))) {
+                        continue;
+                    }
+                    break;
+                default:
+                    throw new IOException("unsupported wire type of tag " + tag);
+            }
+            others = others.concat(data.substring(start - base, in.position() - base));
+        }
+        CodedInputStream cis = CodedInputStream.newInstance(others.newInput());
+        cis.setSizeLimit(Integer.MAX_VALUE);
+        builder.mergeFrom(cis);
+    }
+
+    private static long readVarint(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < MAX_VARINT_SIZE * 7; shift += 7) {
+            if (!in.hasRemaining()) {
+                throw new IOException("truncated spilled frame");
+            }
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint in spilled frame");
+    }
+
+    private static void skip(ByteBuffer in, int length) throws IOException {
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("truncated spilled frame");
+        }
+        in.position(in.position() + length);
+    }
+
+    /**
+     * @return number of bytes received but not decoded yet
+     */
+    public int buffered() {
+        return readBuffer.position() - readIndex;
+    }
+
+    private void ensureWritable(int length) {
+        if (readBuffer.remaining() >= length) {
+            return;
+        }
+        int buffered = buffered();
+        if (readBuffer.capacity() - buffered >= length && readIndex > 0) {
+            // drop the bytes already decoded
+            readBuffer.flip();
+            readBuffer.position(readIndex);
+            readBuffer.compact();
+        } else {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(readBuffer.capacity() * 2, buffered + length));
+            readBuffer.flip();
+            readBuffer.position(readIndex);
+            larger.put(readBuffer);
+            readBuffer = larger;
+        }
+        readIndex = 0;
+    }
+}
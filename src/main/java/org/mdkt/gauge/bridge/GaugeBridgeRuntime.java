@@ -19,32 +19,32 @@
 
 package org.mdkt.gauge.bridge;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.protobuf.CodedInputStream;
-import com.google.protobuf.CodedOutputStream;
 import com.thoughtworks.gauge.GaugeConstant;
+import com.thoughtworks.gauge.Step;
 import com.thoughtworks.gauge.StepValue;
 import com.thoughtworks.gauge.connection.GaugeConnection;
 import com.thoughtworks.gauge.scan.ClasspathScanner;
 import gauge.messages.Messages;
 import gauge.messages.Spec;
-import org.apache.commons.lang.SystemUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.*;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -55,80 +55,568 @@ public class GaugeBridgeRuntime {
     private static final Logger logger = LoggerFactory.getLogger(GaugeBridgeRuntime.class);
     private GaugeConnection connection;
     private Map<String, StepValue> stepsRegistry;
-    private Map<LanguageRunner, Socket> languageRunnerClientRegistry;
-    private Set<LanguageRunner> languageRunnerFinish;
-    private BlockingQueue<Messages.Message> responseQueue;
+    private Map<Method, ProxyStepPlan> dispatchPlans;
+    private Map<LanguageRunner, List<String>> validatedSteps;
+    private Map<LanguageRunner, RunnerPool> languageRunnerClientRegistry;
     private AtomicInteger messageId;
-    private CountDownLatch serverStarted;
+    private BridgeEventLoop eventLoop;
+    private BridgeExecutor executor;
+    private ProxyStepsScanner stepsScanner;
+    private Map<LanguageRunner, CompletableFuture<Void>> runnerStartups;
+    private Map<LanguageRunner, StepResultCache> resultCaches;
+    private Map<String, WireJournal> journals;
+    private BridgeMetrics metrics;
+    private volatile boolean stopping;
 
-    public GaugeBridgeRuntime() {
-        this.connection = new GaugeConnection(readEnvVar(GaugeConstant.GAUGE_API_PORT));
-        this.stepsRegistry = new HashMap<>();
-        this.languageRunnerClientRegistry = new HashMap<>();
-        this.responseQueue = new ArrayBlockingQueue<>(5);
+    public GaugeBridgeRuntime(BridgeMetrics metrics) {
+        this.metrics = metrics;
+        this.stepsRegistry = new ConcurrentHashMap<>();
+        this.dispatchPlans = new ConcurrentHashMap<>();
+        this.validatedSteps = new ConcurrentHashMap<>();
+        this.languageRunnerClientRegistry = new ConcurrentHashMap<>();
         this.messageId = new AtomicInteger(1);
-        this.languageRunnerFinish = new HashSet<>();
+        this.eventLoop = new BridgeEventLoop();
+        this.executor = BridgeExecutor.fromConfig();
+        this.runnerStartups = new ConcurrentHashMap<>();
+        this.resultCaches = new ConcurrentHashMap<>();
+        this.journals = new ConcurrentHashMap<>();
     }
 
     public StepValue getStepValue(String stepText) {
         return stepsRegistry.get(stepText);
     }
 
+    /**
+     * @return the plan built at startup, or built now for a method which was not found by the scanner
+     * but whose step was validated by the runner
+     */
+    public ProxyStepPlan getDispatchPlan(Method method, LanguageRunner lr, String stepText) {
+        ProxyStepPlan plan = dispatchPlans.get(method);
+        if (plan != null) {
+            return plan;
+        }
+        ensureStarted(lr);
+        plan = dispatchPlans.get(method);
+        if (plan != null) {
+            return plan;
+        }
+        StepValue stepValue = getStepValue(stepText);
+        if (stepValue == null) {
+            throw new RuntimeException("[" + lr + "] step \"" + stepText + "\" of " + method.getDeclaringClass().getName()
+                    + "." + method.getName() + " was not validated at startup, it is missing from the proxy step index or the scan");
+        }
+        return dispatchPlans.computeIfAbsent(method, m -> new ProxyStepPlan(m, lr, stepValue));
+    }
+
+    /**
+     * @return the results of the memoized steps of the runner, with the persistent ones of the previous runs
+     */
+    public StepResultCache getResultCache(LanguageRunner lr) {
+        return resultCaches.computeIfAbsent(lr, k -> {
+            int maxSize = BridgeConfig.getInt(lr, BridgeConfig.MEMO_CACHE_SIZE, 1000);
+            // a simulated runner has no plugin version to fingerprint the cache with
+            return isSimulated(lr)
+                    ? StepResultCache.create(lr, maxSize) : StepResultCache.load(lr, maxSize);
+        });
+    }
+
     @PostConstruct
     public void start() {
         long startTime = System.currentTimeMillis();
-        ClasspathScanner classpathScanner = new ClasspathScanner();
-        ProxyStepsScanner stepsScanner = new ProxyStepsScanner();
-        classpathScanner.scan(stepsScanner);
+        Common.clearSpillDir(ManagementFactory.getRuntimeMXBean().getStartTime());
+        eventLoop.start();
+        stepsScanner = new ProxyStepsScanner();
+        if (!stepsScanner.loadIndex(Thread.currentThread().getContextClassLoader())) {
+            new ClasspathScanner().scan(stepsScanner);
+        }
+        if (BridgeConfig.getBoolean(BridgeConfig.LAZY_START, false)) {
+            logger.info("Runners {} will be started by their first proxied step", stepsScanner.getLanguageRunners());
+            return;
+        }
+        Map<LanguageRunner, CompletableFuture<Void>> startups = new LinkedHashMap<>();
         for (LanguageRunner lr : stepsScanner.getLanguageRunners()) {
-            logger.info("[{}] Validating proxy steps", lr);
-            List<String> stepNames = stepsScanner.getStepNames(lr);
-            if (stepNames.size() == 0) {
+            if (stepsScanner.getStepNames(lr).size() == 0) {
                 continue;
             }
-            if (languageRunnerClientRegistry.get(lr) == null) {
-                serverStarted = new CountDownLatch(1);
+            startups.put(lr, startAsync(lr));
+        }
+        try {
+            awaitAll(startups, "start");
+        } catch (RuntimeException e) {
+            // @PreDestroy is not called when @PostConstruct fails, the runners which started would be orphaned
+            finish();
+            throw e;
+        }
+        logger.info("Started BridgeRuntime in {} seconds", (System.currentTimeMillis() - startTime) / 1000.0);
+    }
+
+    /**
+     * Start the runner unless it is already started or starting, concurrent callers share the same startup
+     */
+    private CompletableFuture<Void> startAsync(LanguageRunner lr) {
+        return runnerStartups.computeIfAbsent(lr, k -> CompletableFuture.runAsync(
+                () -> startLanguageRunner(lr, stepsScanner.getStepNames(lr), stepsScanner.getStepMethods(lr)),
+                r -> executor.execute(String.format("start-%s", lr), r)));
+    }
+
+    private void ensureStarted(LanguageRunner lr) {
+        if (languageRunnerClientRegistry.containsKey(lr)) {
+            return;
+        }
+        try {
+            startAsync(lr).get();
+        } catch (InterruptedException | ExecutionException e) {
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            throw new RuntimeException("[" + lr + "] unable to start runner", cause);
+        }
+    }
+
+    /**
+     * Launch the runners of the pool, validate the steps and notify BeforeSuite.
+     * Runners are started concurrently so this must only touch the state of the given runner.
+     */
+    void startLanguageRunner(LanguageRunner lr, List<String> stepNames, List<Method> stepMethods) {
+        if (languageRunnerClientRegistry.get(lr) != null) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        // runners of agents are numbered after the local ones
+        int poolSize = getLocalPoolSize(lr) + RunnerAgentClient.getAgents(lr).size() * RunnerAgentClient.getAgentPoolSize(lr);
+        List<CompletableFuture<RunnerChannel>> launches = new ArrayList<>();
+        RunnerPool pool;
+        try {
+            for (int i = 0; i < poolSize; i++) {
+                launches.add(launchRunner(lr, i));
+            }
+            int timeout = BridgeConfig.getInt(lr, BridgeConfig.STARTUP_TIMEOUT, 60);
+            List<RunnerChannel> channels = new ArrayList<>();
+            for (CompletableFuture<RunnerChannel> launch : launches) {
                 try {
-                    int port = startServer(lr);
-                    new Thread(() -> startRunner(lr, port),
-                            String.format("language-runner-%s", lr)).start();
-                    serverStarted.await();
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
+                    channels.add(launch.get(timeout, TimeUnit.SECONDS));
+                } catch (TimeoutException e) {
+                    throw new RuntimeException("[" + lr + "] runner did not connect within " + timeout + " seconds");
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new RuntimeException("[" + lr + "] runner failed to start", e);
                 }
             }
-            if (!validateSteps(lr, stepNames)) {
+            // all runners of a pool load the same implementation so validating on one of them is enough
+            logger.info("[{}] Validating proxy steps", lr);
+            long validationTime = System.nanoTime();
+            boolean valid = validateSteps(channels.get(0), stepNames);
+            metrics.recordValidation(lr, System.nanoTime() - validationTime);
+            if (!valid) {
                 throw new RuntimeException("[" + lr + "] step validation fails");
             }
-            logger.debug("[{}] notifyBeforeSuite:: ExecutionStarting", lr);
-            Messages.Message beforeSuiteMsg = newMessageBuilder()
-                    .setMessageType(Messages.Message.MessageType.ExecutionStarting)
-                    .setExecutionStartingRequest(Messages.ExecutionStartingRequest.newBuilder()
-                            .build())
-                    .build();
-            Spec.ProtoExecutionResult beforeSuiteResult = executeAndGetStatus(lr, beforeSuiteMsg);
+            validatedSteps.put(lr, stepNames);
+            for (Method method : stepMethods) {
+                // a step with aliases is executed once, with its first text
+                String stepText = method.getAnnotation(Step.class).value()[0];
+                dispatchPlans.put(method, new ProxyStepPlan(method, lr, stepsRegistry.get(stepText)));
+            }
+            if (BridgeConfig.getBoolean(lr, BridgeConfig.DAEMON, false)) {
+                for (RunnerChannel channel : channels) {
+                    resetDataStores(channel);
+                }
+            }
+            List<CompletableFuture<Messages.Message>> beforeSuites = new ArrayList<>();
+            for (RunnerChannel channel : channels) {
+                logger.debug("[{}] notifyBeforeSuite:: ExecutionStarting", channel);
+                beforeSuites.add(channel.send(newExecutionStartingMessage()));
+            }
+            pool = new RunnerPool(lr);
+            for (int i = 0; i < channels.size(); i++) {
+                Spec.ProtoExecutionResult beforeSuiteResult = awaitStatus(beforeSuites.get(i));
+                if (beforeSuiteResult.getFailed()) {
+                    throw new RuntimeException("[" + channels.get(i) + "] BeforeSuite fails");
+                }
+                addToPool(pool, channels.get(i));
+            }
+        } catch (RuntimeException e) {
+            abortLaunches(lr, launches);
+            throw e;
+        }
+        metrics.registerInFlight(pool);
+        metrics.recordStartup(lr, System.nanoTime() - startTime);
+        languageRunnerClientRegistry.put(lr, pool);
+        if (BridgeConfig.getBoolean(lr, BridgeConfig.SPARE_RUNNER, false)) {
+            // the spare takes the index after the pool
+            executor.execute("spare-" + lr, () -> startSpare(pool, poolSize));
+        }
+    }
+
+    /**
+     * Stop the runners of a pool which failed to start, including the ones which are still connecting
+     */
+    private static void abortLaunches(LanguageRunner lr, List<CompletableFuture<RunnerChannel>> launches) {
+        IOException aborted = new IOException("[" + lr + "] runner startup aborted");
+        for (CompletableFuture<RunnerChannel> launch : launches) {
+            launch.completeExceptionally(aborted);
+            launch.thenAccept(channel -> {
+                channel.markClosing();
+                channel.kill();
+            });
+        }
+    }
+
+    private Messages.Message newExecutionStartingMessage() {
+        return newMessageBuilder()
+                .setMessageType(Messages.Message.MessageType.ExecutionStarting)
+                .setExecutionStartingRequest(Messages.ExecutionStartingRequest.newBuilder()
+                        .build())
+                .build();
+    }
+
+    private void addToPool(RunnerPool pool, RunnerChannel channel) {
+        channel.setBrokenHandler(cause -> onRunnerBroken(pool, channel, cause));
+        pool.add(channel);
+        if (channel.isBroken()) {
+            onRunnerBroken(pool, channel, new IOException("[" + channel + "] runner broke while starting"));
+        }
+    }
+
+    /**
+     * Take the broken runner out of its pool and start a new one in the background,
+     * the steps sent to the broken runner have already failed
+     */
+    private void onRunnerBroken(RunnerPool pool, RunnerChannel channel, Throwable cause) {
+        if (!pool.remove(channel) || stopping) {
+            return;
+        }
+        LanguageRunner lr = channel.getLanguageRunner();
+        logger.error("[{}] Runner is broken, restarting it: {}", channel, cause.getMessage());
+        metrics.recordRestart(lr);
+        if (BridgeConfig.getBoolean(lr, BridgeConfig.DAEMON, false) && RunnerChannel.LOCAL_NODE.equals(channel.getNode())) {
+            RunnerDaemonClient.discard(lr, channel.getIndex());
+        }
+        RunnerChannel spare = pool.takeSpare();
+        if (spare != null) {
+            addToPool(pool, spare);
+            logger.info("[{}] Spare runner takes the place of {}", spare, channel);
+            // the index of the broken runner is free, the next spare takes it
+            executor.execute("spare-" + channel, () -> startSpare(pool, channel.getIndex()));
+            return;
+        }
+        executor.execute("restart-" + channel, () -> restartRunner(pool, channel.getIndex()));
+    }
+
+    private void restartRunner(RunnerPool pool, int index) {
+        LanguageRunner lr = pool.getLanguageRunner();
+        try {
+            RunnerChannel channel = prepareRunner(lr, index);
+            if (channel == null) {
+                return;
+            }
+            addToPool(pool, channel);
+            logger.info("[{}] Runner restarted", channel);
+        } catch (InterruptedException | ExecutionException | TimeoutException | RuntimeException e) {
+            logger.error("[{}-{}] Unable to restart runner, the pool has {} runner(s) left", lr, index, pool.getChannels().size(), e);
+        }
+    }
+
+    /**
+     * Start a runner which is kept out of the pool, ready to replace the first runner which breaks
+     */
+    private void startSpare(RunnerPool pool, int index) {
+        LanguageRunner lr = pool.getLanguageRunner();
+        RunnerChannel spare = null;
+        try {
+            spare = prepareRunner(lr, index);
+            if (spare == null) {
+                return;
+            }
+            // the runner imports the step implementations when it starts, validating the steps makes sure it is done
+            validateSpare(spare);
+            RunnerChannel ready = spare;
+            spare.setBrokenHandler(cause -> onSpareBroken(pool, ready, cause));
+            if (stopping || !pool.setSpare(spare)) {
+                spare.markClosing();
+                spare.kill();
+                return;
+            }
+            if (spare.isBroken()) {
+                onSpareBroken(pool, spare, new IOException("[" + spare + "] spare runner broke while starting"));
+                return;
+            }
+            logger.info("[{}] Spare runner ready", spare);
+        } catch (InterruptedException | ExecutionException | TimeoutException | RuntimeException e) {
+            logger.error("[{}-{}] Unable to start spare runner", lr, index, e);
+            if (spare != null) {
+                spare.markClosing();
+                spare.kill();
+            }
+        }
+    }
+
+    /**
+     * Check that the spare implements the steps validated on the pool at startup
+     */
+    private void validateSpare(RunnerChannel spare) throws InterruptedException, ExecutionException {
+        List<String> stepNames = validatedSteps.getOrDefault(spare.getLanguageRunner(), Collections.emptyList());
+        List<Messages.Message> requests = new ArrayList<>();
+        for (String step : stepNames) {
+            requests.add(newStepValidateRequest(stepsRegistry.get(step)));
+        }
+        List<CompletableFuture<Messages.Message>> responses = spare.sendAll(requests);
+        for (int i = 0; i < responses.size(); i++) {
+            String error = getValidationError(stepNames.get(i), responses.get(i).get());
+            if (error != null) {
+                throw new RuntimeException("[" + spare + "] spare runner does not implement " + error);
+            }
+        }
+    }
+
+    private void onSpareBroken(RunnerPool pool, RunnerChannel spare, Throwable cause) {
+        if (!pool.removeSpare(spare) || stopping) {
+            return;
+        }
+        logger.error("[{}] Spare runner is broken, replacing it: {}", spare, cause.getMessage());
+        executor.execute("spare-" + spare, () -> startSpare(pool, spare.getIndex()));
+    }
+
+    /**
+     * Launch a runner and bring it to the state of the runners of the pool
+     *
+     * @return the runner, null when the bridge is stopping
+     */
+    private RunnerChannel prepareRunner(LanguageRunner lr, int index) throws InterruptedException, ExecutionException, TimeoutException {
+        int timeout = BridgeConfig.getInt(lr, BridgeConfig.STARTUP_TIMEOUT, 60);
+        RunnerChannel channel = launchRunner(lr, index).get(timeout, TimeUnit.SECONDS);
+        if (BridgeConfig.getBoolean(lr, BridgeConfig.DAEMON, false)) {
+            resetDataStores(channel);
+        }
+        Spec.ProtoExecutionResult beforeSuiteResult = awaitStatus(channel.send(newExecutionStartingMessage()));
+        if (beforeSuiteResult.getFailed() || stopping) {
+            channel.markClosing();
+            channel.kill();
             if (beforeSuiteResult.getFailed()) {
-                throw new RuntimeException("[" + lr + "] BeforeSuite fails");
+                throw new RuntimeException("[" + channel + "] BeforeSuite fails");
+            }
+            return null;
+        }
+        return channel;
+    }
+
+    /**
+     * Start the runner process
+     *
+     * @return a future completed once the runner is connected
+     */
+    CompletableFuture<RunnerChannel> launchRunner(LanguageRunner lr, int index) {
+        boolean fake = BridgeConfig.getBoolean(lr, BridgeConfig.FAKE_RUNNER, false);
+        boolean replay = BridgeConfig.get(lr, BridgeConfig.REPLAY, null) != null;
+        InetSocketAddress agent = replay ? null : getAgent(lr, index);
+        if (agent != null) {
+            int timeout = BridgeConfig.getInt(lr, BridgeConfig.STARTUP_TIMEOUT, 60);
+            CompletableFuture<SocketChannel> remote = new CompletableFuture<>();
+            executor.execute(String.format("language-runner-%s-%d", lr, index), () -> {
+                try {
+                    remote.complete(RunnerAgentClient.connect(lr, index, agent, timeout));
+                } catch (IOException | RuntimeException e) {
+                    remote.completeExceptionally(e);
+                }
+            });
+            return remote.thenCompose(socketChannel -> eventLoop.register(socketChannel, sc -> {
+                RunnerChannel channel = newRunnerChannel(lr, index, sc);
+                channel.setNode(agent.getHostString() + ":" + agent.getPort());
+                return channel;
+            }));
+        }
+        if (!fake && !replay && BridgeConfig.getBoolean(lr, BridgeConfig.DAEMON, false)) {
+            int timeout = BridgeConfig.getInt(lr, BridgeConfig.STARTUP_TIMEOUT, 60);
+            CompletableFuture<SocketChannel> daemon = new CompletableFuture<>();
+            executor.execute(String.format("language-runner-%s-%d", lr, index), () -> {
+                try {
+                    daemon.complete(RunnerDaemonClient.connect(lr, index, timeout));
+                } catch (IOException | RuntimeException e) {
+                    daemon.completeExceptionally(e);
+                }
+            });
+            return daemon.thenCompose(socketChannel -> eventLoop.register(socketChannel,
+                    sc -> newRunnerChannel(lr, index, sc)));
+        }
+        RunnerTransport transport = RunnerTransport.forRunner(lr);
+        ServerSocketChannel server = startServer(transport, lr, index);
+        Map<String, String> runnerEnvironment;
+        try {
+            runnerEnvironment = transport.getRunnerEnvironment(server);
+        } catch (IOException e) {
+            closeServer(transport, server);
+            throw new RuntimeException("starting socket server error", e);
+        }
+        CompletableFuture<RunnerChannel> connected = eventLoop.accept(server,
+                socketChannel -> newRunnerChannel(lr, index, socketChannel));
+        connected.whenComplete((channel, e) -> closeServer(transport, server));
+        executor.execute(String.format("language-runner-%s-%d", lr, index), () -> {
+            try {
+                if (replay) {
+                    ReplayRunner.fromConfig(lr, index).run(runnerEnvironment);
+                } else if (fake) {
+                    FakeRunner.fromConfig(lr).run(runnerEnvironment);
+                } else {
+                    startRunner(lr, runnerEnvironment, connected);
+                }
+            } catch (RuntimeException e) {
+                connected.completeExceptionally(e);
+                throw e;
+            }
+        });
+        return connected;
+    }
+
+    /**
+     * @return the agent running the runner of the pool, null for a local runner
+     */
+    private static InetSocketAddress getAgent(LanguageRunner lr, int index) {
+        List<InetSocketAddress> agents = RunnerAgentClient.getAgents(lr);
+        int localSize = getLocalPoolSize(lr);
+        if (index < localSize) {
+            return null;
+        }
+        int agent = (index - localSize) / RunnerAgentClient.getAgentPoolSize(lr);
+        // a spare started with an index after the pool is local
+        return agent < agents.size() ? agents.get(agent) : null;
+    }
+
+    /**
+     * @return the number of runners started by the bridge itself, there can be none when runners are started by agents
+     */
+    private static int getLocalPoolSize(LanguageRunner lr) {
+        int poolSize = BridgeConfig.getInt(lr, BridgeConfig.POOL_SIZE, 1);
+        return Math.max(RunnerAgentClient.getAgents(lr).isEmpty() ? 1 : 0, poolSize);
+    }
+
+    private RunnerChannel newRunnerChannel(LanguageRunner lr, int index, SocketChannel socketChannel) {
+        RunnerChannel channel = new RunnerChannel(lr, index, socketChannel, eventLoop, metrics);
+        if (BridgeConfig.getBoolean(lr, BridgeConfig.JOURNAL, false)) {
+            // a restarted runner appends to the journal of the one it replaces
+            channel.setJournal(journals.computeIfAbsent(channel.toString(), name -> {
+                File file = new File(Common.getJournalDir(), name + WireJournal.SUFFIX);
+                try {
+                    return WireJournal.create(file);
+                } catch (IOException e) {
+                    throw new RuntimeException("[" + name + "] unable to create journal " + file, e);
+                }
+            }));
+        }
+        return channel;
+    }
+
+    /**
+     * @return true when the runner is simulated in the bridge JVM, there is then no runner plugin nor Gauge API
+     */
+    private static boolean isSimulated(LanguageRunner lr) {
+        return BridgeConfig.getBoolean(lr, BridgeConfig.FAKE_RUNNER, false)
+                || BridgeConfig.get(lr, BridgeConfig.REPLAY, null) != null;
+    }
+
+    /**
+     * A runner daemon may have been used by a previous suite so its data stores are cleared before it is used again.
+     * This is the only state reset, globals of the step implementations keep the values of the previous suite.
+     */
+    private void resetDataStores(RunnerChannel channel) {
+        List<Messages.Message> resets = Arrays.asList(
+                newMessageBuilder()
+                        .setMessageType(Messages.Message.MessageType.SuiteDataStoreInit)
+                        .setSuiteDataStoreInitRequest(Messages.SuiteDataStoreInitRequest.newBuilder().build())
+                        .build(),
+                newMessageBuilder()
+                        .setMessageType(Messages.Message.MessageType.SpecDataStoreInit)
+                        .setSpecDataStoreInitRequest(Messages.SpecDataStoreInitRequest.newBuilder().build())
+                        .build(),
+                newMessageBuilder()
+                        .setMessageType(Messages.Message.MessageType.ScenarioDataStoreInit)
+                        .setScenarioDataStoreInitRequest(Messages.ScenarioDataStoreInitRequest.newBuilder().build())
+                        .build());
+        for (CompletableFuture<Messages.Message> response : channel.sendAll(resets)) {
+            Spec.ProtoExecutionResult result = awaitStatus(response);
+            if (result.getFailed()) {
+                throw new RuntimeException("[" + channel + "] unable to reset runner: " + result.getErrorMessage());
             }
         }
-        logger.info("Started BridgeRuntime in {} seconds", (System.currentTimeMillis() - startTime) / 1000);
     }
 
     @PreDestroy
     public void finish() {
         logger.info("Stopping all runners");
-        for (LanguageRunner lr : languageRunnerClientRegistry.keySet()) {
-            Messages.Message killMsg = newMessageBuilder()
-                    .setMessageType(Messages.Message.MessageType.KillProcessRequest)
-                    .setKillProcessRequest(Messages.KillProcessRequest.newBuilder()
-                            .build())
-                    .build();
-            languageRunnerFinish.add(lr);
-            Spec.ProtoExecutionResult killResult = executeAndGetStatus(lr, killMsg);
-            if (killResult.getFailed()) {
-                logger.error("Kill {} runner failed due to {}", lr, killResult.getErrorMessage());
+        stopping = true;
+        Map<RunnerChannel, CompletableFuture<Void>> kills = new LinkedHashMap<>();
+        for (RunnerPool pool : languageRunnerClientRegistry.values()) {
+            List<RunnerChannel> channels = new ArrayList<>(pool.getChannels());
+            RunnerChannel spare = pool.takeSpare();
+            if (spare != null) {
+                channels.add(spare);
+            }
+            for (RunnerChannel channel : channels) {
+                if (BridgeConfig.getBoolean(channel.getLanguageRunner(), BridgeConfig.DAEMON, false)) {
+                    // the runner daemon outlives this suite, only the connection to it is closed
+                    channel.markClosing();
+                    channel.close();
+                    continue;
+                }
+                Messages.Message killMsg = newMessageBuilder()
+                        .setMessageType(Messages.Message.MessageType.KillProcessRequest)
+                        .setKillProcessRequest(Messages.KillProcessRequest.newBuilder()
+                                .build())
+                        .build();
+                channel.markClosing();
+                kills.put(channel, channel.send(killMsg).thenAccept(response -> {
+                    Spec.ProtoExecutionResult killResult = response.getExecutionStatusResponse().getExecutionResult();
+                    if (killResult.getFailed()) {
+                        logger.error("Kill {} runner failed due to {}", channel, killResult.getErrorMessage());
+                    }
+                }));
+            }
+        }
+        try {
+            awaitAll(kills, "stop");
+        } catch (RuntimeException e) {
+            logger.error("Stopping runners failed", e);
+        }
+        eventLoop.stop();
+        executor.shutdown();
+        for (WireJournal journal : journals.values()) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.warn("Unable to close journal {}: {}", journal.getFile(), e.getMessage());
+            }
+        }
+        for (StepResultCache cache : resultCaches.values()) {
+            cache.save();
+        }
+        metrics.writeSummary();
+    }
+
+    /**
+     * Give the runners leased by the current scenario back to their pools
+     */
+    public void releaseRunners() {
+        for (RunnerPool pool : languageRunnerClientRegistry.values()) {
+            pool.release();
+        }
+    }
+
+    /**
+     * Wait for all runners to complete the given phase and report every runner which failed
+     */
+    private static <K> void awaitAll(Map<K, CompletableFuture<Void>> futures, String phase) {
+        RuntimeException failure = null;
+        for (Map.Entry<K, CompletableFuture<Void>> entry : futures.entrySet()) {
+            try {
+                entry.getValue().get();
+            } catch (InterruptedException | ExecutionException e) {
+                Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                logger.error("[{}] Unable to {} runner: {}", entry.getKey(), phase, cause.getMessage());
+                if (failure == null) {
+                    failure = new RuntimeException("[" + entry.getKey() + "] unable to " + phase + " runner", cause);
+                } else {
+                    failure.addSuppressed(cause);
+                }
             }
         }
+        if (failure != null) {
+            throw failure;
+        }
     }
 
     /**
@@ -137,18 +625,77 @@ public class GaugeBridgeRuntime {
      * @return
      */
     public Messages.Message.Builder newMessageBuilder() {
-        return Messages.Message.newBuilder().setMessageId(messageId.getAndIncrement());
+        return Messages.Message.newBuilder().setMessageId(nextMessageId());
+    }
+
+    public long nextMessageId() {
+        return messageId.getAndIncrement();
+    }
+
+    /**
+     * Send the message to the runner leased by the current scenario without waiting for its response.
+     * Many requests can be in flight at the same time, the response is matched by messageId.
+     *
+     * @return a future which is completed with the response of the runner
+     */
+    public CompletableFuture<Messages.Message> executeAsync(LanguageRunner lr, Messages.Message msg) {
+        try {
+            return lease(lr).send(msg);
+        } catch (RuntimeException e) {
+            CompletableFuture<Messages.Message> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    /**
+     * Send all messages to the runner leased by the current scenario in a single write without waiting for their responses.
+     *
+     * @return futures of the responses in the same order as the messages, all failed if the runner is not available
+     */
+    public List<CompletableFuture<Messages.Message>> executeAllAsync(LanguageRunner lr, List<Messages.Message> msgs) {
+        try {
+            return lease(lr).sendAll(msgs);
+        } catch (RuntimeException e) {
+            List<CompletableFuture<Messages.Message>> futures = new ArrayList<>(msgs.size());
+            for (int i = 0; i < msgs.size(); i++) {
+                CompletableFuture<Messages.Message> future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+                futures.add(future);
+            }
+            return futures;
+        }
     }
 
     public Spec.ProtoExecutionResult executeAndGetStatus(LanguageRunner lr, Messages.Message msg) {
-        Socket socket = languageRunnerClientRegistry.get(lr);
+        return awaitStatus(executeAsync(lr, msg));
+    }
+
+    /**
+     * @return the runners started for the language, null if they are not started
+     */
+    RunnerPool getPool(LanguageRunner lr) {
+        return languageRunnerClientRegistry.get(lr);
+    }
+
+    private RunnerChannel lease(LanguageRunner lr) {
+        ensureStarted(lr);
+        RunnerPool pool = languageRunnerClientRegistry.get(lr);
+        if (pool == null) {
+            throw new IllegalStateException("[" + lr + "] runner is not connected");
+        }
+        return pool.lease();
+    }
+
+    /**
+     * Wait for the response of a request sent with {@link #executeAsync(LanguageRunner, Messages.Message)}
+     *
+     * @return the execution result of the ExecutionStatusResponse
+     */
+    public static Spec.ProtoExecutionResult awaitStatus(CompletableFuture<Messages.Message> future) {
         try {
-            logger.debug("Request --- \n{}\n---------", msg);
-            socket.getOutputStream().write(toData(msg.toByteArray()));
-            socket.getOutputStream().flush();
-            Messages.Message response = responseQueue.take();
+            Messages.Message response = future.get();
             ensureMessageType(response.getMessageType()).is(Messages.Message.MessageType.ExecutionStatusResponse);
-            logger.debug("Response --- \n{}\n---------", response);
             return response.getExecutionStatusResponse().getExecutionResult();
         } catch (Exception e) {
             throw new RuntimeException("execute error", e);
@@ -159,176 +706,160 @@ public class GaugeBridgeRuntime {
         return new MessageTypeChecker(type);
     }
 
-    private boolean validateSteps(LanguageRunner lr, List<String> stepNames) {
-        Socket socket = languageRunnerClientRegistry.get(lr);
+    private boolean validateSteps(RunnerChannel channel, List<String> stepNames) {
+        LanguageRunner lr = channel.getLanguageRunner();
+        boolean batch = !"sequential".equalsIgnoreCase(BridgeConfig.get(lr, BridgeConfig.VALIDATION_MODE, "batch"));
+        // a simulated runner has no plugin version to fingerprint the cache with
+        StepValidationCache cache = BridgeConfig.getBoolean(lr, BridgeConfig.VALIDATION_CACHE, true)
+                && !isSimulated(lr)
+                ? StepValidationCache.load(lr) : null;
+        List<String> errors = new ArrayList<>();
         try {
+            List<String> pendingSteps = new ArrayList<>();
+            List<Messages.Message> requests = new ArrayList<>();
             for (String step : stepNames) {
+                StepValue cached = cache == null ? null : cache.get(step);
+                if (cached != null) {
+                    logger.debug("[{}] Step: {} (cached)", lr, step);
+                    stepsRegistry.put(step, cached);
+                    continue;
+                }
                 logger.debug("[{}] Step: {}", lr, step);
-                StepValue sv = connection.getStepValue(step);
+                StepValue sv = parseStepValue(lr, step);
                 stepsRegistry.put(step, sv);
-                Spec.ProtoStepValue protoStepValue = Spec.ProtoStepValue.newBuilder()
-                        .addAllParameters(sv.getParameters())
-                        .setParameterizedStepValue(sv.getStepAnnotationText())
-                        .setStepValue(sv.getStepText())
-                        .build();
-                Messages.Message msg = newMessageBuilder()
-                        .setMessageType(Messages.Message.MessageType.StepValidateRequest)
-                        .setStepValidateRequest(Messages.StepValidateRequest.newBuilder()
-                                .setStepText(protoStepValue.getStepValue())
-                                .setStepValue(protoStepValue)
-                                .build())
-                        .build();
-                socket.getOutputStream().write(toData(msg.toByteArray()));
-                socket.getOutputStream().flush();
-
-                Messages.Message response = responseQueue.take();
-                ensureMessageType(response.getMessageType()).is(Messages.Message.MessageType.StepValidateResponse);
-                if (!response.getStepValidateResponse().getIsValid()) {
-                    throw new RuntimeException(response.getStepValidateResponse().getErrorMessage() + "\n" + response.getStepValidateResponse().getSuggestion());
+                Messages.Message msg = newStepValidateRequest(sv);
+                if (batch) {
+                    pendingSteps.add(step);
+                    requests.add(msg);
+                } else {
+                    Messages.Message response = channel.send(msg).get();
+                    String error = getValidationError(step, response);
+                    if (error != null) {
+                        throw new RuntimeException(error);
+                    }
+                    if (cache != null) {
+                        cache.put(step, sv);
+                    }
                 }
             }
-        } catch (IOException | InterruptedException e) {
+            if (batch && !requests.isEmpty()) {
+                // all frames are written at once, the responses are then collected by messageId
+                List<CompletableFuture<Messages.Message>> responses = channel.sendAll(requests);
+                for (int i = 0; i < responses.size(); i++) {
+                    String step = pendingSteps.get(i);
+                    String error = getValidationError(step, responses.get(i).get());
+                    if (error != null) {
+                        errors.add(error);
+                    } else if (cache != null) {
+                        cache.put(step, stepsRegistry.get(step));
+                    }
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException("validation error", e);
         }
-
+        if (cache != null) {
+            cache.save(stepNames);
+        }
+        if (!errors.isEmpty()) {
+            throw new RuntimeException("[" + lr + "] " + errors.size() + " invalid step(s)\n" + String.join("\n", errors));
+        }
         return true;
     }
 
-    private int readEnvVar(String env) {
-        String port = System.getenv(env);
-        if (port == null || port.equalsIgnoreCase("")) {
-            throw new RuntimeException(env + " not set");
+    private StepValue parseStepValue(LanguageRunner lr, String step) {
+        if (isSimulated(lr)) {
+            return FakeRunner.parseStepValue(step);
+        }
+        // runners are validated concurrently but the Gauge API connection serves one request at a time
+        synchronized (this) {
+            if (connection == null) {
+                connection = new GaugeConnection(readEnvVar(GaugeConstant.GAUGE_API_PORT));
+            }
+            return connection.getStepValue(step);
         }
-        return Integer.parseInt(port);
     }
 
-    static class RunnerInfo {
-        public String id;
-        public String name;
-        public String version;
-        public String description;
-        public Map<String, List<String>> run;
-        public Map<String, List<String>> init;
-        public Map<String, String> gaugeVersionSupport;
-        public String lspLangId;
+    private Messages.Message newStepValidateRequest(StepValue sv) {
+        Spec.ProtoStepValue protoStepValue = Spec.ProtoStepValue.newBuilder()
+                .addAllParameters(sv.getParameters())
+                .setParameterizedStepValue(sv.getStepAnnotationText())
+                .setStepValue(sv.getStepText())
+                .build();
+        return newMessageBuilder()
+                .setMessageType(Messages.Message.MessageType.StepValidateRequest)
+                .setStepValidateRequest(Messages.StepValidateRequest.newBuilder()
+                        .setStepText(protoStepValue.getStepValue())
+                        .setStepValue(protoStepValue)
+                        .build())
+                .build();
     }
 
-    private static RunnerInfo getRunnerInfo(LanguageRunner language) {
-        String pluginJsonPath = Common.getLanguageJSONFilePath(language.name());
-        try {
-            return new ObjectMapper().readValue(new File(pluginJsonPath), RunnerInfo.class);
-        } catch (IOException e) {
-            throw new RuntimeException("Unable to read descriptor for language " + language, e);
+    /**
+     * @return the reason why the step is invalid, null if the step is valid
+     */
+    private static String getValidationError(String step, Messages.Message response) {
+        ensureMessageType(response.getMessageType()).is(Messages.Message.MessageType.StepValidateResponse);
+        if (response.getStepValidateResponse().getIsValid()) {
+            return null;
         }
+        return step + ": " + response.getStepValidateResponse().getErrorMessage() + "\n" + response.getStepValidateResponse().getSuggestion();
     }
 
-    private void startRunner(LanguageRunner language, int internalPort) {
-        RunnerInfo info = getRunnerInfo(language);
-        List<String> cmd = null;
-        if (SystemUtils.IS_OS_WINDOWS) {
-            cmd = info.run.get("windows");
-        } else if (SystemUtils.IS_OS_MAC || SystemUtils.IS_OS_MAC_OSX) {
-            cmd = info.run.get("darwin");
-        } else if (SystemUtils.IS_OS_LINUX) {
-            cmd = info.run.get("linux");
-        }
-        if (cmd == null) {
-            throw new RuntimeException("No command found for the OS");
+    private int readEnvVar(String env) {
+        String port = System.getenv(env);
+        if (port == null || port.equalsIgnoreCase("")) {
+            throw new RuntimeException(env + " not set");
         }
-        try {
-            ProcessBuilder processBuilder = new ProcessBuilder()
-                    .command(cmd)
-                    .directory(new File(Common.getLanguageJSONFilePath(language.name())).getParentFile())
-                    .inheritIO();
-            processBuilder.environment().put("GAUGE_INTERNAL_PORT", String.valueOf(internalPort));
-            Process runner = processBuilder
-                    .start();
-            if (runner.waitFor() != 0) {
-                throw new RuntimeException("command run failed");
+        return Integer.parseInt(port);
+    }
+
+    private void startRunner(LanguageRunner language, Map<String, String> runnerEnvironment, CompletableFuture<RunnerChannel> connected) {
+        Process runner = RunnerProcess.start(language, runnerEnvironment, null);
+        connected.whenComplete((channel, e) -> {
+            if (channel != null) {
+                channel.attachProcess(runner);
+            } else {
+                // the startup was aborted before the runner connected
+                runner.destroyForcibly();
             }
-        } catch (IOException | InterruptedException e) {
-            throw new RuntimeException("Unable to execute command " + cmd, e);
+        });
+        int exitCode;
+        try {
+            exitCode = runner.waitFor();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Unable to wait for " + language + " runner", e);
+        }
+        // a runner whose process is gone is broken even when its connection is kept open, e.g. by a child process
+        IOException exited = new IOException("[" + language + "] runner process exited with code " + exitCode);
+        if (!connected.completeExceptionally(exited)) {
+            connected.thenAccept(channel -> {
+                if (!channel.isClosing()) {
+                    channel.onBroken(exited);
+                }
+            });
         }
     }
 
-    private int startServer(LanguageRunner lr) {
+    private ServerSocketChannel startServer(RunnerTransport transport, LanguageRunner lr, int index) {
         // need to start a socket server to accept the initial request from the runner
         try {
-            ServerSocket server = new ServerSocket(0);
-            logger.debug("Internal Server for language {} started on {}", lr, server.getLocalPort());
-            new Thread(() -> {
-                Socket socket = null;
-                try {
-                    socket = server.accept();
-                    languageRunnerClientRegistry.put(lr, socket);
-                    serverStarted.countDown();
-                    InputStream inputStream = socket.getInputStream();
-                    while (socket.isConnected()) {
-                        MessageLength messageLength = getMessageLength(inputStream);
-                        Messages.Message response = Messages.Message.parseFrom(toBytes(messageLength));
-                        responseQueue.put(response);
-                    }
-                } catch (Exception e) {
-                    if (!languageRunnerFinish.contains(lr)) {
-                        throw new RuntimeException("reading socket error", e);
-                    }
-                } finally {
-                    try {
-                        if (socket != null) {
-                            socket.close();
-                        }
-                    } catch (IOException e) {
-                        logger.warn("closing socket error: {}", e.getMessage());
-                    }
-                }
-            }, String.format("server-%s", lr)).start();
-            return server.getLocalPort();
+            ServerSocketChannel server = transport.bind(lr, index);
+            logger.debug("Internal Server for language {} started on {}", lr, server.getLocalAddress());
+            return server;
         } catch (IOException e) {
             throw new RuntimeException("starting socket server error", e);
         }
     }
 
-    private static byte[] toData(byte[] bytes) throws IOException {
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        CodedOutputStream cos = CodedOutputStream.newInstance(stream);
-        cos.writeUInt64NoTag(bytes.length);
-        cos.flush();
-        stream.write(bytes);
-        stream.close();
-
-        return stream.toByteArray();
-    }
-
-    private static byte[] toBytes(MessageLength messageLength) throws IOException {
-        long messageSize = messageLength.getLength();
-        CodedInputStream stream = messageLength.getRemainingStream();
-        return stream.readRawBytes((int) messageSize);
-    }
-
-    static class MessageLength {
-        private long length;
-        private CodedInputStream remainingStream;
-
-        MessageLength(long length, CodedInputStream remainingStream) {
-            this.length = length;
-            this.remainingStream = remainingStream;
-        }
-
-        public long getLength() {
-            return length;
-        }
-
-        public CodedInputStream getRemainingStream() {
-            return remainingStream;
+    private static void closeServer(RunnerTransport transport, ServerSocketChannel server) {
+        try {
+            transport.close(server);
+        } catch (IOException e) {
+            logger.warn("closing socket server error: {}", e.getMessage());
         }
     }
 
-    private static MessageLength getMessageLength(InputStream is) throws IOException {
-        CodedInputStream codedInputStream = CodedInputStream.newInstance(is);
-        long size = codedInputStream.readRawVarint64();
-        return new MessageLength(size, codedInputStream);
-    }
-
     private static class MessageTypeChecker {
         private Messages.Message.MessageType actualType;
 
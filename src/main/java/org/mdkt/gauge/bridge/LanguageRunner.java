@@ -19,6 +19,22 @@
 
 package org.mdkt.gauge.bridge;
 
+import java.io.File;
+
 public enum LanguageRunner {
-    python, js, ruby
+    python("step_impl"), js("tests"), ruby("step_implementations");
+
+    private final String defaultImplementationDir;
+
+    LanguageRunner(String defaultImplementationDir) {
+        this.defaultImplementationDir = defaultImplementationDir;
+    }
+
+    /**
+     * @return the directory containing the step implementations of this runner,
+     * can be changed with {@code gauge_bridge_<runner>_implementation_dir}
+     */
+    public File getImplementationDir() {
+        return new File(Common.getProjectRoot(), BridgeConfig.get(this, BridgeConfig.IMPLEMENTATION_DIR, defaultImplementationDir));
+    }
 }
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs each task on a daemon platform thread, idle threads are reused by the next tasks.
+ * <p>
+ * The pool is not bounded as a runner launcher holds its thread for as long as the runner process lives,
+ * the number of threads follows the number of runners.
+ */
+public class PlatformThreadExecutor implements BridgeExecutor {
+    public static final String NAME = "platform";
+    private final ExecutorService executor;
+
+    public PlatformThreadExecutor() {
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "bridge-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void execute(String name, Runnable task) {
+        executor.execute(() -> {
+            Thread thread = Thread.currentThread();
+            thread.setName(name);
+            try {
+                task.run();
+            } finally {
+                thread.setName("bridge-worker");
+            }
+        });
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -22,18 +22,31 @@ package org.mdkt.gauge.bridge;
 import com.google.protobuf.ByteString;
 import com.thoughtworks.gauge.Gauge;
 import com.thoughtworks.gauge.Step;
-import com.thoughtworks.gauge.StepValue;
 import gauge.messages.Messages;
 import gauge.messages.Spec;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.nio.charset.Charset;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Aspect
 @Component
@@ -43,67 +56,157 @@ public class ProxyStepHandler {
     @Autowired
     GaugeBridgeRuntime runtime;
 
+    @Autowired
+    BridgeMetrics metrics;
+
+    private final boolean pipelined = BridgeConfig.getBoolean(BridgeConfig.STEP_PIPELINING, false);
+
     @Around("@annotation(proxyStep) && @annotation(step)")
     public Object handle(ProceedingJoinPoint joinPoint, ProxyStep proxyStep, Step step) throws Throwable {
-        LanguageRunner lr = proxyStep.value();
-        for (String stepText : step.value()) {
-            StepValue sv = runtime.getStepValue(stepText);
-            String actualStepText = String.format(sv.getStepText().replaceAll("\\{\\}", "\"%s\""), joinPoint.getArgs());
-            logger.debug("Handling\nactualStepText: {}\nparsedStepText: {}\nparameters: {}", actualStepText, sv.getStepText(), joinPoint.getArgs());
-            Messages.ExecuteStepRequest.Builder requestBuilder = Messages.ExecuteStepRequest.newBuilder()
-                    .setActualStepText(actualStepText)
-                    .setParsedStepText(sv.getStepText());
-            for (Object paramValue : joinPoint.getArgs()) {
-                requestBuilder.addParameters(Spec.Parameter.newBuilder()
-                        .setValue(String.valueOf(paramValue))
-                        .setParameterType(Spec.Parameter.ParameterType.Static)
-                        .build());
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        executeStep(method, proxyStep, step, joinPoint.getArgs());
+        return joinPoint.proceed();
+    }
+
+    /**
+     * Execute the step and its hooks on the runner, it throws when one of them fails
+     */
+    void executeStep(Method method, ProxyStep proxyStep, Step step, Object[] args) {
+        ProxyStepPlan plan = runtime.getDispatchPlan(method, proxyStep.value(), step.value()[0]);
+        LanguageRunner lr = plan.getLanguageRunner();
+        Messages.ExecuteStepRequest executeStepRequest = plan.newExecuteStepRequest(args);
+        logger.debug("Handling\nactualStepText: {}\nparsedStepText: {}\nparameters: {}",
+                executeStepRequest.getActualStepText(), executeStepRequest.getParsedStepText(), args);
+        StepResultCache resultCache = null;
+        ByteString resultKey = null;
+        if (plan.getMemoized() != null) {
+            resultCache = runtime.getResultCache(lr);
+            resultKey = executeStepRequest.toByteString();
+            Spec.ProtoExecutionResult cachedResult = resultCache.get(resultKey);
+            metrics.recordMemoized(plan, cachedResult != null);
+            if (cachedResult != null) {
+                checkStep(lr, cachedResult);
+                return;
+            }
+        }
+
+        Messages.Message preMsg = plan.newPreStepMessage(runtime.nextMessageId(), executeStepRequest);
+        Messages.Message msg = plan.newExecuteStepMessage(runtime.nextMessageId(), executeStepRequest);
+        Messages.Message postMsg = plan.newPostStepMessage(runtime.nextMessageId());
+        Spec.ProtoExecutionResult result;
+        if (pipelined) {
+            // the step is only sent once its prehook succeeded, it is then written with the posthook in a single flush
+            checkPreStep(execute(plan, BridgeMetrics.StepPhase.pre, preMsg));
+            List<CompletableFuture<Messages.Message>> responses = runtime.executeAllAsync(lr, Arrays.asList(msg, postMsg));
+            result = await(plan, BridgeMetrics.StepPhase.execute, responses.get(0));
+            checkStep(lr, result);
+            checkPostStep(await(plan, BridgeMetrics.StepPhase.post, responses.get(1)));
+        } else {
+            checkPreStep(execute(plan, BridgeMetrics.StepPhase.pre, preMsg));
+            result = execute(plan, BridgeMetrics.StepPhase.execute, msg);
+            checkStep(lr, result);
+            checkPostStep(execute(plan, BridgeMetrics.StepPhase.post, postMsg));
+        }
+        if (resultCache != null) {
+            // only reached when the step and its hooks succeeded
+            resultCache.put(resultKey, result, plan.getMemoized());
+        }
+    }
+
+    private Spec.ProtoExecutionResult execute(ProxyStepPlan plan, BridgeMetrics.StepPhase phase, Messages.Message msg) {
+        long startTime = System.nanoTime();
+        try {
+            return runtime.executeAndGetStatus(plan.getLanguageRunner(), msg);
+        } finally {
+            metrics.recordStepWait(plan, phase, System.nanoTime() - startTime);
+        }
+    }
+
+    private Spec.ProtoExecutionResult await(ProxyStepPlan plan, BridgeMetrics.StepPhase phase, CompletableFuture<Messages.Message> response) {
+        long startTime = System.nanoTime();
+        try {
+            return GaugeBridgeRuntime.awaitStatus(response);
+        } finally {
+            metrics.recordStepWait(plan, phase, System.nanoTime() - startTime);
+        }
+    }
+
+    private static void checkStep(LanguageRunner lr, Spec.ProtoExecutionResult result) {
+        List<ByteString> messages = result.getMessageList().asByteStringList();
+        List<ByteString> screenshots = getScreenshots(result);
+        if (!messages.isEmpty() || !screenshots.isEmpty()) {
+            int spillThreshold = BridgeConfig.getInt(lr, BridgeConfig.SPILL_THRESHOLD, BridgeConfig.DEFAULT_SPILL_THRESHOLD);
+            for (ByteString bs : messages) {
+                if (bs.size() > spillThreshold) {
+                    Gauge.writeMessage("Message of " + bs.size() + " bytes written to " + spill(lr, bs, ".log"));
+                } else {
+                    Gauge.writeMessage(bs.toStringUtf8());
+                }
+            }
+            // the Java runner only takes its own screenshots so the ones of the runner are passed by file
+            for (ByteString screenshot : screenshots) {
+                Gauge.writeMessage("Screenshot written to " + spill(lr, screenshot, ".png"));
             }
-            Messages.ExecuteStepRequest executeStepRequest = requestBuilder.build();
+        }
+        if (result.getFailed()) {
+            throw new RuntimeException(result.getErrorMessage() + " \n" + result.getStackTrace());
+        }
+    }
 
-            preStep(lr, executeStepRequest);
+    private static List<ByteString> getScreenshots(Spec.ProtoExecutionResult result) {
+        if (result.getFailureScreenshot().isEmpty()) {
+            return result.getScreenshotsList();
+        }
+        List<ByteString> screenshots = new ArrayList<>(result.getScreenshotsList());
+        screenshots.add(result.getFailureScreenshot());
+        return screenshots;
+    }
 
-            Messages.Message msg = runtime.newMessageBuilder()
-                    .setMessageType(Messages.Message.MessageType.ExecuteStep)
-                    .setExecuteStepRequest(executeStepRequest)
-                    .build();
-            Spec.ProtoExecutionResult result = runtime.executeAndGetStatus(lr, msg);
-            for (ByteString bs : result.getMessageList().asByteStringList()) {
-                Gauge.writeMessage(bs.toString(Charset.defaultCharset()));
+    /**
+     * Stream the bytes to a file of the spill directory. The file is named after its content so a memoized step
+     * or a rerun with the same output reuses the file instead of adding one.
+     *
+     * @return the path of the file
+     */
+    static String spill(LanguageRunner lr, ByteString bytes, String suffix) {
+        File dir = Common.getSpillDir();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (ByteBuffer buffer : bytes.asReadOnlyByteBufferList()) {
+                digest.update(buffer);
             }
-            if (result.getFailed()) {
-                throw new RuntimeException(result.getErrorMessage() + " \n" + result.getStackTrace());
+            StringBuilder name = new StringBuilder(lr + "-");
+            for (byte b : digest.digest()) {
+                name.append(String.format("%02x", b));
             }
-            postStep(lr);
+            File file = new File(dir, name + suffix);
+            if (file.exists()) {
+                return file.getAbsolutePath();
+            }
+            dir.mkdirs();
+            // concurrent steps can spill the same content, the file is only visible once complete
+            File temp = File.createTempFile(lr + "-", ".tmp", dir);
+            try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+                for (ByteBuffer buffer : bytes.asReadOnlyByteBufferList()) {
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return file.getAbsolutePath();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new RuntimeException("[" + lr + "] unable to write " + bytes.size() + " bytes to " + dir, e);
         }
-        return joinPoint.proceed();
     }
 
-    private void postStep(LanguageRunner lr) {
-        Messages.Message postMsg = runtime.newMessageBuilder()
-                .setMessageType(Messages.Message.MessageType.StepExecutionEnding)
-                .setExecutionEndingRequest(Messages.ExecutionEndingRequest.newBuilder()
-                        .build())
-                .build();
-        Spec.ProtoExecutionResult postResult = runtime.executeAndGetStatus(lr, postMsg);
+    private static void checkPostStep(Spec.ProtoExecutionResult postResult) {
         if (postResult.getFailed()) {
             throw new RuntimeException("Posthook failed: " + postResult.getErrorMessage());
         }
     }
 
-    private void preStep(LanguageRunner lr, Messages.ExecuteStepRequest executeStepRequest) {
-        Messages.Message preMsg = runtime.newMessageBuilder()
-                .setMessageType(Messages.Message.MessageType.StepExecutionStarting)
-                .setStepExecutionStartingRequest(Messages.StepExecutionStartingRequest.newBuilder()
-                        .setCurrentExecutionInfo(Messages.ExecutionInfo.newBuilder()
-                                .setCurrentStep(Messages.StepInfo.newBuilder()
-                                        .setIsFailed(false)
-                                        .setStep(executeStepRequest)
-                                        .build())
-                                .build())
-                        .build())
-                .build();
-        Spec.ProtoExecutionResult preResult = runtime.executeAndGetStatus(lr, preMsg);
+    private static void checkPreStep(Spec.ProtoExecutionResult preResult) {
         if (preResult.getFailed()) {
             throw new RuntimeException("Prehook failed: " + preResult.getErrorMessage());
         }
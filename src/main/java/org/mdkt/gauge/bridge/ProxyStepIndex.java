@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StreamUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipException;
+
+/**
+ * The index of proxy steps written at compile time by {@link ProxyStepIndexProcessor}.
+ * <p>
+ * Each line describes one method: {@code runner, declaring class, method name, parameter types, step texts...}
+ * separated by tabs, parameter types are separated by commas.
+ * <p>
+ * Classpath entries without an index, e.g. jars built without the processor, are still searched: only the classes
+ * referring to {@link ProxyStep} are loaded and their annotated methods are added to the indexed ones.
+ * The classes found in a jar are remembered in {@code target/gauge/index} until the jar changes.
+ */
+public class ProxyStepIndex {
+    private static final Logger logger = LoggerFactory.getLogger(ProxyStepIndex.class);
+    public static final String RESOURCE = "META-INF/gauge-bridge/proxy-steps.idx";
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<>();
+    private static final byte[] PROXY_STEP_DESCRIPTOR = ("L" + ProxyStep.class.getName().replace('.', '/') + ";")
+            .getBytes(StandardCharsets.UTF_8);
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String SCANNED_JARS = "target/gauge/index/scanned-jars.json";
+
+    static {
+        for (Class<?> type : Arrays.asList(boolean.class, byte.class, char.class, short.class, int.class, long.class, float.class, double.class)) {
+            PRIMITIVES.put(type.getName(), type);
+        }
+    }
+
+    static String toLine(String runner, String className, String methodName, List<String> parameterTypes, List<String> stepTexts) {
+        List<String> fields = new ArrayList<>();
+        fields.add(runner);
+        fields.add(className);
+        fields.add(methodName);
+        fields.add(String.join(",", parameterTypes));
+        for (String stepText : stepTexts) {
+            fields.add(escape(stepText));
+        }
+        return String.join("\t", fields);
+    }
+
+    /**
+     * @return the methods of all indexes on the classpath and of the classpath entries without an index,
+     * null if there is no index or if it does not match the classes
+     */
+    public static List<Method> load(ClassLoader classLoader) {
+        Set<Method> methods = new LinkedHashSet<>();
+        Set<File> indexedRoots = new HashSet<>();
+        try {
+            Enumeration<URL> indexes = classLoader.getResources(RESOURCE);
+            if (!indexes.hasMoreElements()) {
+                return null;
+            }
+            for (URL index : Collections.list(indexes)) {
+                File root = getRoot(index);
+                if (root != null) {
+                    indexedRoots.add(root);
+                }
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(index.openStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (!line.isEmpty()) {
+                            methods.add(toMethod(classLoader, line));
+                        }
+                    }
+                }
+            }
+            long startTime = System.currentTimeMillis();
+            int scanned = 0;
+            File scannedJarsFile = new File(Common.getProjectRoot(), SCANNED_JARS);
+            Map<String, ScannedJar> scannedJars = readScannedJars(scannedJarsFile);
+            int cached = scannedJars.size();
+            for (File root : getClasspathRoots(classLoader)) {
+                if (!indexedRoots.contains(root)) {
+                    methods.addAll(loadMethods(classLoader, root, findClasses(root, scannedJars)));
+                    scanned++;
+                }
+            }
+            if (scannedJars.size() != cached) {
+                writeScannedJars(scannedJarsFile, scannedJars);
+            }
+            logger.debug("Searched {} classpath entries without proxy step index in {} ms", scanned, System.currentTimeMillis() - startTime);
+        } catch (IOException | ReflectiveOperationException e) {
+            logger.warn("Proxy step index is outdated, scanning the classpath instead: {}", e.toString());
+            return null;
+        }
+        return new ArrayList<>(methods);
+    }
+
+    /**
+     * @return the directory or the jar holding the index, null if it is neither
+     */
+    private static File getRoot(URL index) throws IOException {
+        try {
+            if ("jar".equals(index.getProtocol())) {
+                String path = index.getPath();
+                return new File(new URL(path.substring(0, path.indexOf("!/"))).toURI()).getCanonicalFile();
+            }
+            if ("file".equals(index.getProtocol())) {
+                File root = new File(index.toURI());
+                for (int i = 0; i < RESOURCE.split("/").length; i++) {
+                    root = root.getParentFile();
+                }
+                return root.getCanonicalFile();
+            }
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            logger.debug("Unable to locate the classpath entry of {}: {}", index, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * @return the directories and jars of the class loaders and of the java class path, with the jars of their manifests
+     */
+    private static Set<File> getClasspathRoots(ClassLoader classLoader) throws IOException {
+        Set<File> roots = new LinkedHashSet<>();
+        for (ClassLoader cl = classLoader; cl != null; cl = cl.getParent()) {
+            if (cl instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) cl).getURLs()) {
+                    if ("file".equals(url.getProtocol())) {
+                        try {
+                            addRoot(roots, new File(url.toURI()));
+                        } catch (URISyntaxException | IllegalArgumentException e) {
+                            logger.debug("Ignoring classpath entry {}: {}", url, e.getMessage());
+                        }
+                    }
+                }
+            }
+        }
+        for (String entry : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                addRoot(roots, new File(entry));
+            }
+        }
+        return roots;
+    }
+
+    private static void addRoot(Set<File> roots, File entry) throws IOException {
+        if (!entry.exists() || !roots.add(entry.getCanonicalFile()) || entry.isDirectory()) {
+            return;
+        }
+        try (JarFile jar = new JarFile(entry)) {
+            Manifest manifest = jar.getManifest();
+            String classPath = manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+            if (classPath == null) {
+                return;
+            }
+            // a launcher jar, e.g. of surefire, only lists the actual classpath in its manifest
+            for (String path : classPath.trim().split("\\s+")) {
+                try {
+                    URL url = new URL(entry.toURI().toURL(), path);
+                    if ("file".equals(url.getProtocol())) {
+                        addRoot(roots, new File(url.toURI()));
+                    }
+                } catch (URISyntaxException | IllegalArgumentException | MalformedURLException e) {
+                    logger.debug("Ignoring manifest classpath entry {} of {}: {}", path, entry, e.getMessage());
+                }
+            }
+        } catch (ZipException e) {
+            logger.debug("Ignoring classpath entry {}: {}", entry, e.getMessage());
+        }
+    }
+
+    /**
+     * @return the classes of the directory or jar which refer to {@link ProxyStep}
+     */
+    private static List<String> findClasses(File root, Map<String, ScannedJar> scannedJars) throws IOException {
+        List<String> classNames = new ArrayList<>();
+        if (root.isDirectory()) {
+            Path rootPath = root.toPath();
+            List<Path> classFiles;
+            try (Stream<Path> paths = Files.walk(rootPath)) {
+                classFiles = paths.filter(p -> p.toString().endsWith(CLASS_SUFFIX)).collect(Collectors.toList());
+            }
+            for (Path path : classFiles) {
+                if (refersToProxyStep(Files.readAllBytes(path))) {
+                    classNames.add(toClassName(rootPath.relativize(path).toString().replace(File.separatorChar, '/')));
+                }
+            }
+        } else {
+            ScannedJar scannedJar = scannedJars.get(root.getPath());
+            if (scannedJar != null && scannedJar.length == root.length() && scannedJar.lastModified == root.lastModified()) {
+                return scannedJar.classNames;
+            }
+            try (JarFile jar = new JarFile(root)) {
+                for (JarEntry entry : Collections.list(jar.entries())) {
+                    if (!entry.getName().endsWith(CLASS_SUFFIX) || entry.getName().startsWith("META-INF/")) {
+                        continue;
+                    }
+                    try (InputStream in = jar.getInputStream(entry)) {
+                        if (refersToProxyStep(StreamUtils.copyToByteArray(in))) {
+                            classNames.add(toClassName(entry.getName()));
+                        }
+                    }
+                }
+            } catch (ZipException e) {
+                logger.debug("Ignoring classpath entry {}: {}", root, e.getMessage());
+            }
+            scannedJar = new ScannedJar();
+            scannedJar.length = root.length();
+            scannedJar.lastModified = root.lastModified();
+            scannedJar.classNames = classNames;
+            scannedJars.put(root.getPath(), scannedJar);
+        }
+        return classNames;
+    }
+
+    private static List<Method> loadMethods(ClassLoader classLoader, File root, List<String> classNames) {
+        List<Method> methods = new ArrayList<>();
+        for (String className : classNames) {
+            try {
+                for (Method method : Class.forName(className, false, classLoader).getDeclaredMethods()) {
+                    if (method.isAnnotationPresent(ProxyStep.class)) {
+                        methods.add(method);
+                    }
+                }
+            } catch (ClassNotFoundException | LinkageError e) {
+                logger.debug("Ignoring class {} of {}: {}", className, root, e.toString());
+            }
+        }
+        if (!methods.isEmpty()) {
+            logger.info("Found {} proxy steps in {} which has no proxy step index", methods.size(), root);
+        }
+        return methods;
+    }
+
+    private static Map<String, ScannedJar> readScannedJars(File file) {
+        if (file.isFile()) {
+            try {
+                return new ObjectMapper().readValue(file, new TypeReference<Map<String, ScannedJar>>() {
+                });
+            } catch (IOException e) {
+                logger.warn("Unable to read {}: {}", file, e.getMessage());
+            }
+        }
+        return new HashMap<>();
+    }
+
+    private static void writeScannedJars(File file, Map<String, ScannedJar> scannedJars) {
+        try {
+            file.getParentFile().mkdirs();
+            new ObjectMapper().writeValue(file, new TreeMap<>(scannedJars));
+        } catch (IOException e) {
+            logger.warn("Unable to write {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static String toClassName(String path) {
+        return path.substring(0, path.length() - CLASS_SUFFIX.length()).replace('/', '.');
+    }
+
+    /**
+     * The annotation descriptor is a constant of every class using it, searching the bytes avoids loading the other classes
+     */
+    private static boolean refersToProxyStep(byte[] classFile) {
+        byte[] pattern = PROXY_STEP_DESCRIPTOR;
+        outer:
+        for (int i = 0; i <= classFile.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (classFile[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static Method toMethod(ClassLoader classLoader, String line) throws ReflectiveOperationException {
+        String[] fields = line.split("\t", -1);
+        Class<?> declaringClass = Class.forName(fields[1], false, classLoader);
+        List<Class<?>> parameterTypes = new ArrayList<>();
+        if (!fields[3].isEmpty()) {
+            for (String type : fields[3].split(",")) {
+                parameterTypes.add(toClass(classLoader, type));
+            }
+        }
+        return declaringClass.getDeclaredMethod(fields[2], parameterTypes.toArray(new Class<?>[0]));
+    }
+
+    private static Class<?> toClass(ClassLoader classLoader, String type) throws ClassNotFoundException {
+        if (type.endsWith("[]")) {
+            return Array.newInstance(toClass(classLoader, type.substring(0, type.length() - 2)), 0).getClass();
+        }
+        Class<?> primitive = PRIMITIVES.get(type);
+        return primitive != null ? primitive : Class.forName(type, false, classLoader);
+    }
+
+    static class ScannedJar {
+        public long length;
+        public long lastModified;
+        public List<String> classNames;
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+}
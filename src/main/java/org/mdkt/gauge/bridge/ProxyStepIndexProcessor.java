@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes {@link ProxyStepIndex#RESOURCE} with every method annotated with both {@link ProxyStep} and
+ * {@code @Step} so the bridge does not have to scan the classpath at startup.
+ * <p>
+ * An incremental build only compiles the changed classes, so the lines of the index already in the output directory
+ * are kept for the classes which still exist and were not compiled again.
+ */
+@SupportedAnnotationTypes("org.mdkt.gauge.bridge.ProxyStep")
+public class ProxyStepIndexProcessor extends AbstractProcessor {
+    private static final String STEP_ANNOTATION = "com.thoughtworks.gauge.Step";
+    private final List<String> lines = new ArrayList<>();
+    private final Set<String> compiledClasses = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            List<String> index = readIndex();
+            index.addAll(lines);
+            if (!index.isEmpty()) {
+                writeIndex(index);
+            }
+            return false;
+        }
+        for (Element element : roundEnv.getRootElements()) {
+            if (element instanceof TypeElement) {
+                compiledClasses.add(processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+            }
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(ProxyStep.class)) {
+            ExecutableElement method = (ExecutableElement) element;
+            List<String> stepTexts = getStepTexts(method);
+            if (stepTexts.isEmpty()) {
+                continue;
+            }
+            TypeElement declaringClass = (TypeElement) method.getEnclosingElement();
+            List<String> parameterTypes = new ArrayList<>();
+            for (VariableElement parameter : method.getParameters()) {
+                parameterTypes.add(toTypeName(parameter.asType()));
+            }
+            lines.add(ProxyStepIndex.toLine(method.getAnnotation(ProxyStep.class).value().name(),
+                    processingEnv.getElementUtils().getBinaryName(declaringClass).toString(),
+                    method.getSimpleName().toString(), parameterTypes, stepTexts));
+        }
+        return false;
+    }
+
+    private List<String> getStepTexts(ExecutableElement method) {
+        List<String> stepTexts = new ArrayList<>();
+        for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+            if (!((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(STEP_ANNOTATION)) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e : mirror.getElementValues().entrySet()) {
+                if (e.getKey().getSimpleName().contentEquals("value")) {
+                    Object value = e.getValue().getValue();
+                    if (value instanceof List) {
+                        for (Object v : (List<?>) value) {
+                            stepTexts.add(String.valueOf(((AnnotationValue) v).getValue()));
+                        }
+                    } else {
+                        stepTexts.add(String.valueOf(value));
+                    }
+                }
+            }
+        }
+        return stepTexts;
+    }
+
+    private String toTypeName(TypeMirror type) {
+        TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+        if (erased.getKind() == TypeKind.ARRAY) {
+            return toTypeName(((ArrayType) erased).getComponentType()) + "[]";
+        }
+        if (erased.getKind() == TypeKind.DECLARED) {
+            return processingEnv.getElementUtils().getBinaryName((TypeElement) ((DeclaredType) erased).asElement()).toString();
+        }
+        return erased.toString();
+    }
+
+    /**
+     * @return the lines of the index of a previous build whose classes were not compiled by this one
+     */
+    private List<String> readIndex() {
+        List<String> kept = new ArrayList<>();
+        try {
+            FileObject index = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", ProxyStepIndex.RESOURCE);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(index.openInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t", -1);
+                    if (fields.length > 1 && !isCompiled(fields[1])
+                            && processingEnv.getElementUtils().getTypeElement(fields[1].replace('$', '.')) != null) {
+                        kept.add(line);
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // no previous index
+        }
+        return kept;
+    }
+
+    private boolean isCompiled(String className) {
+        int nested = className.indexOf('$');
+        return compiledClasses.contains(nested < 0 ? className : className.substring(0, nested));
+    }
+
+    private void writeIndex(List<String> lines) {
+        try {
+            FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", ProxyStepIndex.RESOURCE);
+            try (Writer writer = new OutputStreamWriter(index.openOutputStream(), StandardCharsets.UTF_8)) {
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write " + ProxyStepIndex.RESOURCE + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import com.thoughtworks.gauge.StepValue;
+import com.thoughtworks.gauge.Table;
+import com.thoughtworks.gauge.TableRow;
+import gauge.messages.Messages;
+import gauge.messages.Spec;
+
+import java.lang.reflect.Method;
+import java.util.regex.Pattern;
+
+/**
+ * Everything needed to dispatch a proxied method, built once at startup:
+ * the step text split around its parameters and request prototypes where only the parameters and messageId change
+ */
+public class ProxyStepPlan {
+    private static final Pattern PARAMETER_PLACEHOLDER = Pattern.compile("\\{\\}");
+    private final Method method;
+    private final LanguageRunner lr;
+    private final String[] textSegments;
+    private final Messages.ExecuteStepRequest requestPrototype;
+    private final Messages.Message preStepPrototype;
+    private final Messages.Message executeStepPrototype;
+    private final Messages.Message postStepPrototype;
+    private final Memoized memoized;
+
+    public ProxyStepPlan(Method method, LanguageRunner lr, StepValue sv) {
+        this.method = method;
+        this.lr = lr;
+        this.textSegments = PARAMETER_PLACEHOLDER.split(sv.getStepText(), -1);
+        this.requestPrototype = Messages.ExecuteStepRequest.newBuilder()
+                .setParsedStepText(sv.getStepText())
+                .build();
+        this.preStepPrototype = Messages.Message.newBuilder()
+                .setMessageType(Messages.Message.MessageType.StepExecutionStarting)
+                .build();
+        this.executeStepPrototype = Messages.Message.newBuilder()
+                .setMessageType(Messages.Message.MessageType.ExecuteStep)
+                .build();
+        this.postStepPrototype = Messages.Message.newBuilder()
+                .setMessageType(Messages.Message.MessageType.StepExecutionEnding)
+                .setExecutionEndingRequest(Messages.ExecutionEndingRequest.newBuilder()
+                        .build())
+                .build();
+        this.memoized = method == null ? null : method.getAnnotation(Memoized.class);
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public LanguageRunner getLanguageRunner() {
+        return lr;
+    }
+
+    /**
+     * @return the memoization settings of the step, null when every call goes to the runner
+     */
+    public Memoized getMemoized() {
+        return memoized;
+    }
+
+    public String getStepText() {
+        return requestPrototype.getParsedStepText();
+    }
+
+    public Messages.ExecuteStepRequest newExecuteStepRequest(Object[] args) {
+        Messages.ExecuteStepRequest.Builder requestBuilder = requestPrototype.toBuilder();
+        for (Object paramValue : args) {
+            requestBuilder.addParameters(toParameter(paramValue));
+        }
+        StringBuilder actualStepText = new StringBuilder(textSegments[0]);
+        for (int i = 1; i < textSegments.length; i++) {
+            if (i - 1 < args.length) {
+                appendActualText(actualStepText, requestBuilder.getParameters(i - 1));
+            } else {
+                actualStepText.append("\"\"");
+            }
+            actualStepText.append(textSegments[i]);
+        }
+        return requestBuilder.setActualStepText(actualStepText.toString()).build();
+    }
+
+    /**
+     * Tables go as {@link Spec.ProtoTable} so the runner receives them the way Gauge itself would send them,
+     * without a text rendering in between. Everything else goes as a static parameter, Gauge gives a step
+     * the content of a file or a multiline string as a plain String so they can't be told apart from other text.
+     */
+    static Spec.Parameter toParameter(Object paramValue) {
+        if (paramValue instanceof Table) {
+            return Spec.Parameter.newBuilder()
+                    .setParameterType(Spec.Parameter.ParameterType.Table)
+                    .setName("table")
+                    .setTable(toProtoTable((Table) paramValue))
+                    .build();
+        }
+        return Spec.Parameter.newBuilder()
+                .setParameterType(Spec.Parameter.ParameterType.Static)
+                .setValue(String.valueOf(paramValue))
+                .build();
+    }
+
+    private static Spec.ProtoTable toProtoTable(Table table) {
+        Spec.ProtoTable.Builder protoTable = Spec.ProtoTable.newBuilder()
+                .setHeaders(Spec.ProtoTableRow.newBuilder().addAllCells(table.getColumnNames()));
+        for (TableRow row : table.getTableRows()) {
+            protoTable.addRows(Spec.ProtoTableRow.newBuilder().addAllCells(row.getCellValues()));
+        }
+        return protoTable.build();
+    }
+
+    private static void appendActualText(StringBuilder actualStepText, Spec.Parameter parameter) {
+        if (parameter.getParameterType() == Spec.Parameter.ParameterType.Static) {
+            actualStepText.append('"').append(parameter.getValue()).append('"');
+        } else {
+            actualStepText.append('<').append(parameter.getName()).append('>');
+        }
+    }
+
+    public Messages.Message newPreStepMessage(long messageId, Messages.ExecuteStepRequest executeStepRequest) {
+        return preStepPrototype.toBuilder()
+                .setMessageId(messageId)
+                .setStepExecutionStartingRequest(Messages.StepExecutionStartingRequest.newBuilder()
+                        .setCurrentExecutionInfo(Messages.ExecutionInfo.newBuilder()
+                                .setCurrentStep(Messages.StepInfo.newBuilder()
+                                        .setIsFailed(false)
+                                        .setStep(executeStepRequest)
+                                        .build())
+                                .build())
+                        .build())
+                .build();
+    }
+
+    public Messages.Message newExecuteStepMessage(long messageId, Messages.ExecuteStepRequest executeStepRequest) {
+        return executeStepPrototype.toBuilder()
+                .setMessageId(messageId)
+                .setExecuteStepRequest(executeStepRequest)
+                .build();
+    }
+
+    public Messages.Message newPostStepMessage(long messageId) {
+        return postStepPrototype.toBuilder()
+                .setMessageId(messageId)
+                .build();
+    }
+}
@@ -35,32 +35,56 @@ import java.util.stream.Collectors;
 public class ProxyStepsScanner implements IScanner {
     private static final Logger logger = LoggerFactory.getLogger(ProxyStepsScanner.class);
     private Map<LanguageRunner, List<String>> stepNames;
+    private Map<LanguageRunner, List<Method>> stepMethods;
 
     public ProxyStepsScanner() {
         this.stepNames = new HashMap<>();
+        this.stepMethods = new HashMap<>();
     }
 
     @Override
     public void scan(Reflections reflections) {
         Set<Method> methods = reflections.getMethodsAnnotatedWith(ProxyStep.class);
         for (Method m : methods) {
-            Step a = m.getAnnotation(Step.class);
-            ProxyStep ps = m.getAnnotation(ProxyStep.class);
-            if (a != null) {
-                LanguageRunner lr = ps.value();
-                List<String> steps = stepNames.get(lr);
-                String[] stepValues = a.value();
-                logger.debug("Scan: {} proxy to {}", stepValues, lr);
-                if (steps == null) {
-                    steps = new ArrayList<>();
-                    stepNames.put(lr, steps);
-                }
-                steps.addAll(Arrays.stream(stepValues).collect(Collectors.toList()));
-            }
+            add(m);
         }
         logger.debug("Scan completed. {}", stepNames);
     }
 
+    /**
+     * Load the proxy steps from the index written at compile time by {@link ProxyStepIndexProcessor}
+     *
+     * @return false when there is no index, the classpath must then be scanned
+     */
+    public boolean loadIndex(ClassLoader classLoader) {
+        List<Method> methods = ProxyStepIndex.load(classLoader);
+        if (methods == null) {
+            return false;
+        }
+        for (Method m : methods) {
+            add(m);
+        }
+        logger.debug("Index loaded. {}", stepNames);
+        return true;
+    }
+
+    public void add(Method m) {
+        Step a = m.getAnnotation(Step.class);
+        ProxyStep ps = m.getAnnotation(ProxyStep.class);
+        if (a != null && ps != null) {
+            LanguageRunner lr = ps.value();
+            List<String> steps = stepNames.get(lr);
+            String[] stepValues = a.value();
+            logger.debug("Scan: {} proxy to {}", stepValues, lr);
+            if (steps == null) {
+                steps = new ArrayList<>();
+                stepNames.put(lr, steps);
+            }
+            steps.addAll(Arrays.stream(stepValues).collect(Collectors.toList()));
+            stepMethods.computeIfAbsent(lr, k -> new ArrayList<>()).add(m);
+        }
+    }
+
     public List<String> getStepNames(LanguageRunner lr) {
         if (stepNames.containsKey(lr)) {
             return stepNames.get(lr);
@@ -69,6 +93,14 @@ public class ProxyStepsScanner implements IScanner {
         }
     }
 
+    public List<Method> getStepMethods(LanguageRunner lr) {
+        if (stepMethods.containsKey(lr)) {
+            return stepMethods.get(lr);
+        } else {
+            return new ArrayList<>();
+        }
+    }
+
     public Set<LanguageRunner> getLanguageRunners() {
         return stepNames.keySet();
     }
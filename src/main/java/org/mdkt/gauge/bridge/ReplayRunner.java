@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import gauge.messages.Messages;
+import gauge.messages.Spec;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * A language runner running in the bridge JVM which answers with the responses of a {@link WireJournal}.
+ * <p>
+ * Recorded responses are served in order for each request type, and for each step text for executed steps,
+ * so a step gets the result it had even when the steps are spread differently over the pool.
+ * Once the recorded responses of a kind are used up the last one is served again.
+ */
+public class ReplayRunner {
+    private final Map<String, Queue<Messages.Message>> responses;
+    private final Map<String, Messages.Message> lastResponses;
+
+    public ReplayRunner(List<WireJournal.Record> records) {
+        this.responses = new HashMap<>();
+        this.lastResponses = new HashMap<>();
+        Map<Long, String> requestKeys = new HashMap<>();
+        for (WireJournal.Record record : records) {
+            if (record.getDirection() == BridgeMetrics.Direction.sent) {
+                requestKeys.put(record.getMessageId(), getKey(record.getMessage()));
+                continue;
+            }
+            String key = requestKeys.remove(record.getMessageId());
+            if (key != null) {
+                responses.computeIfAbsent(key, k -> new ArrayDeque<>()).add(record.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return a replay of the journal recorded for the same runner of the pool
+     */
+    public static ReplayRunner fromConfig(LanguageRunner lr, int index) {
+        File file = new File(BridgeConfig.get(lr, BridgeConfig.REPLAY, null), lr + "-" + index + WireJournal.SUFFIX);
+        try {
+            return new ReplayRunner(WireJournal.read(file));
+        } catch (IOException e) {
+            throw new RuntimeException("[" + lr + "-" + index + "] unable to read journal " + file, e);
+        }
+    }
+
+    public void run(Map<String, String> runnerEnvironment) {
+        FakeRunner.serve("replay runner", runnerEnvironment, this::respond);
+    }
+
+    synchronized Messages.Message respond(Messages.Message request) {
+        String key = getKey(request);
+        Queue<Messages.Message> recorded = responses.get(key);
+        Messages.Message response = recorded == null ? null : recorded.poll();
+        if (response == null) {
+            response = lastResponses.get(key);
+        } else {
+            lastResponses.put(key, response);
+        }
+        if (response == null) {
+            return Messages.Message.newBuilder()
+                    .setMessageId(request.getMessageId())
+                    .setMessageType(Messages.Message.MessageType.ExecutionStatusResponse)
+                    .setExecutionStatusResponse(Messages.ExecutionStatusResponse.newBuilder()
+                            .setExecutionResult(Spec.ProtoExecutionResult.newBuilder()
+                                    .setFailed(true)
+                                    .setErrorMessage("No recorded response to " + key)))
+                    .build();
+        }
+        return response.toBuilder().setMessageId(request.getMessageId()).build();
+    }
+
+    private static String getKey(Messages.Message request) {
+        if (request.getMessageType() == Messages.Message.MessageType.ExecuteStep) {
+            return request.getMessageType() + " " + request.getExecuteStepRequest().getParsedStepText();
+        }
+        return request.getMessageType().name();
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Launches runners on behalf of a bridge running on another host.
+ * <p>
+ * The agent runs in a checkout of the project, with the runner plugins installed, and listens on a TCP port of the
+ * loopback address unless a bind address is given. Anyone reaching the agent can run the runners so listening on
+ * another address needs a shared token, {@code gauge_bridge_agent_token}, set on the agent and on the bridges.
+ * <p>
+ * Each connection of a bridge starts with the runner name, then the token if any, followed by a new line. The agent launches that runner,
+ * resolving it from its own Gauge installation, and answers {@code OK <implementation hash>} once the runner is
+ * connected, or {@code ERROR <reason>}. Frames are then relayed between the bridge and the runner until either
+ * side closes, the runner is killed when the bridge disconnects. A bridge which does not send its line within the
+ * startup timeout is disconnected.
+ */
+public class RunnerAgent {
+    private static final Logger logger = LoggerFactory.getLogger(RunnerAgent.class);
+    static final String OK = "OK";
+    static final String ERROR = "ERROR";
+    static final int MAX_LINE_LENGTH = 4096;
+    private final InetSocketAddress address;
+    private final String token;
+    private final FakeRunner fakeRunner;
+    private final BridgeExecutor executor;
+    private final AtomicInteger connections;
+    private final Object sessionLock = new Object();
+    private int sessions;
+    private volatile ServerSocket server;
+
+    public RunnerAgent(InetSocketAddress address) {
+        this(address, BridgeConfig.get(BridgeConfig.AGENT_TOKEN, null), null);
+    }
+
+    /**
+     * @param token      token the bridges must send, null to accept any bridge
+     * @param fakeRunner runner served in the agent JVM for every bridge, null to start the runners set by the config
+     */
+    RunnerAgent(InetSocketAddress address, String token, FakeRunner fakeRunner) {
+        this.address = address;
+        this.token = token;
+        this.fakeRunner = fakeRunner;
+        this.executor = BridgeExecutor.fromConfig();
+        this.connections = new AtomicInteger();
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: RunnerAgent <port> [bind address]");
+            System.exit(2);
+        }
+        InetSocketAddress address = args.length == 2
+                ? new InetSocketAddress(args[1], Integer.parseInt(args[0]))
+                : new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]));
+        try {
+            new RunnerAgent(address).run();
+        } catch (Exception e) {
+            logger.error("Runner agent failed", e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Serve bridges until {@link #stop()}, then wait for the connected bridges to disconnect
+     */
+    public void run() throws IOException {
+        if (token == null && (address.getAddress() == null || !address.getAddress().isLoopbackAddress())) {
+            throw new RuntimeException("runner agent listening on " + address + " needs " + BridgeConfig.PREFIX + BridgeConfig.AGENT_TOKEN);
+        }
+        try (ServerSocket serverSocket = new ServerSocket()) {
+            serverSocket.bind(address);
+            server = serverSocket;
+            logger.info("Runner agent listening on {}", serverSocket.getLocalSocketAddress());
+            while (!serverSocket.isClosed()) {
+                Socket bridge;
+                try {
+                    bridge = serverSocket.accept();
+                } catch (IOException e) {
+                    if (serverSocket.isClosed()) {
+                        break;
+                    }
+                    throw e;
+                }
+                synchronized (sessionLock) {
+                    sessions++;
+                }
+                executor.execute("agent-" + connections.incrementAndGet(), () -> {
+                    try {
+                        serve(bridge);
+                    } finally {
+                        synchronized (sessionLock) {
+                            sessions--;
+                            sessionLock.notifyAll();
+                        }
+                    }
+                });
+            }
+        } finally {
+            // sessions still start relays on the executor
+            awaitSessions();
+            executor.shutdown();
+        }
+    }
+
+    private void awaitSessions() {
+        synchronized (sessionLock) {
+            while (sessions > 0) {
+                try {
+                    sessionLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the port the agent listens on, 0 until it is listening
+     */
+    public int getPort() {
+        ServerSocket serverSocket = server;
+        return serverSocket == null ? 0 : serverSocket.getLocalPort();
+    }
+
+    public void stop() {
+        ServerSocket serverSocket = server;
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                logger.warn("closing agent server error: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void serve(Socket bridge) {
+        String name = null;
+        Process runner = null;
+        try (Socket bridgeSocket = bridge) {
+            bridgeSocket.setTcpNoDelay(true);
+            InputStream bridgeInput = bridgeSocket.getInputStream();
+            OutputStream bridgeOutput = new BufferedOutputStream(bridgeSocket.getOutputStream());
+            LanguageRunner lr;
+            // the line is read before the bridge is authenticated, a peer which stalls must not hold a thread forever
+            bridgeSocket.setSoTimeout((int) TimeUnit.SECONDS.toMillis(BridgeConfig.getInt(BridgeConfig.STARTUP_TIMEOUT, 60)));
+            String[] request = readLine(bridgeInput).split(" ", 2);
+            bridgeSocket.setSoTimeout(0);
+            name = request[0];
+            if (token != null && (request.length < 2 || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                    request[1].getBytes(StandardCharsets.UTF_8)))) {
+                logger.warn("[{}] Rejecting bridge {}, wrong token", name, bridgeSocket.getRemoteSocketAddress());
+                writeLine(bridgeOutput, ERROR + " wrong token");
+                return;
+            }
+            try {
+                lr = LanguageRunner.valueOf(name);
+            } catch (IllegalArgumentException e) {
+                writeLine(bridgeOutput, ERROR + " unknown runner " + name);
+                return;
+            }
+            Socket runnerSocket;
+            try (ServerSocket runnerServer = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                runnerServer.setSoTimeout((int) TimeUnit.SECONDS.toMillis(BridgeConfig.getInt(lr, BridgeConfig.STARTUP_TIMEOUT, 60)));
+                Map<String, String> runnerEnvironment = Collections.singletonMap(TcpTransport.GAUGE_INTERNAL_PORT,
+                        String.valueOf(runnerServer.getLocalPort()));
+                if (fakeRunner != null || BridgeConfig.getBoolean(lr, BridgeConfig.FAKE_RUNNER, false)) {
+                    // several agents on one host stand in for separate nodes in load tests
+                    FakeRunner fake = fakeRunner != null ? fakeRunner : FakeRunner.fromConfig(lr);
+                    executor.execute(Thread.currentThread().getName() + "-fake", () -> fake.run(runnerEnvironment));
+                } else {
+                    runner = RunnerProcess.start(lr, runnerEnvironment, null);
+                }
+                runnerSocket = runnerServer.accept();
+            } catch (IOException | RuntimeException e) {
+                writeLine(bridgeOutput, ERROR + " " + e.getMessage());
+                return;
+            }
+            logger.info("[{}] Runner started for {}", lr, bridgeSocket.getRemoteSocketAddress());
+            writeLine(bridgeOutput, OK + " " + Common.hashDirectory(lr.getImplementationDir()));
+            try (Socket runnerConnection = runnerSocket) {
+                runnerConnection.setTcpNoDelay(true);
+                executor.execute(Thread.currentThread().getName() + "-" + lr,
+                        () -> relay(runnerConnection, bridgeSocket));
+                relay(bridgeSocket, runnerConnection);
+            }
+        } catch (IOException e) {
+            logger.warn("[{}] bridge connection error: {}", name, e.getMessage());
+        } finally {
+            if (runner != null) {
+                stopRunner(name, runner);
+            }
+        }
+    }
+
+    /**
+     * Copy the bytes read from one socket to the other until the first one is closed, then close the other one
+     */
+    private static void relay(Socket from, Socket to) {
+        try {
+            InputStream in = from.getInputStream();
+            OutputStream out = to.getOutputStream();
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+                out.flush();
+            }
+        } catch (IOException e) {
+            logger.debug("relay from {} ended: {}", from.getRemoteSocketAddress(), e.getMessage());
+        } finally {
+            try {
+                to.close();
+            } catch (IOException e) {
+                logger.debug("closing socket error: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static void stopRunner(String name, Process runner) {
+        try {
+            // a runner asked to stop by the bridge exits on its own
+            if (!runner.waitFor(10, TimeUnit.SECONDS)) {
+                logger.warn("[{}] Runner did not exit, killing it", name);
+                runner.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            runner.destroyForcibly();
+        }
+        logger.info("[{}] Runner stopped", name);
+    }
+
+    static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        // the peer does not send anything after its line until it is answered so reading byte by byte is enough
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("connection closed during the handshake");
+            }
+            line.append((char) b);
+            if (line.length() > MAX_LINE_LENGTH) {
+                throw new IOException("handshake line longer than " + MAX_LINE_LENGTH + " bytes");
+            }
+        }
+        return line.toString().trim();
+    }
+
+    static void writeLine(OutputStream out, String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+}
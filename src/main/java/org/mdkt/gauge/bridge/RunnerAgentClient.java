@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connects the bridge to runners launched by {@link RunnerAgent}s on other hosts.
+ * <p>
+ * Agents are listed with {@code gauge_bridge_agents=host:port,host:port} and each of them runs
+ * {@code gauge_bridge_agent_pool_size} runners, in addition to the {@code gauge_bridge_pool_size} local ones.
+ * The agents listening on other addresses than loopback expect the {@code gauge_bridge_agent_token} they were started with.
+ */
+public class RunnerAgentClient {
+    private static final Logger logger = LoggerFactory.getLogger(RunnerAgentClient.class);
+
+    /**
+     * @return the agents of the runner, empty when all runners are local
+     */
+    public static List<InetSocketAddress> getAgents(LanguageRunner lr) {
+        List<InetSocketAddress> agents = new ArrayList<>();
+        String value = BridgeConfig.get(lr, BridgeConfig.AGENTS, "");
+        for (String agent : value.split(",")) {
+            agent = agent.trim();
+            if (agent.isEmpty()) {
+                continue;
+            }
+            int separator = agent.lastIndexOf(':');
+            if (separator < 0) {
+                throw new RuntimeException("[" + lr + "] agent " + agent + " must be host:port");
+            }
+            try {
+                agents.add(InetSocketAddress.createUnresolved(agent.substring(0, separator),
+                        Integer.parseInt(agent.substring(separator + 1))));
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("[" + lr + "] agent " + agent + " must be host:port", e);
+            }
+        }
+        return agents;
+    }
+
+    public static int getAgentPoolSize(LanguageRunner lr) {
+        return Math.max(1, BridgeConfig.getInt(lr, BridgeConfig.AGENT_POOL_SIZE, 1));
+    }
+
+    /**
+     * Ask the agent to launch a runner
+     *
+     * @return a blocking socket channel connected to the runner through the agent
+     */
+    public static SocketChannel connect(LanguageRunner lr, int index, InetSocketAddress address, int timeoutSeconds) throws IOException {
+        String agent = address.getHostString() + ":" + address.getPort();
+        SocketChannel socketChannel = SocketChannel.open();
+        try {
+            socketChannel.socket().connect(new InetSocketAddress(address.getHostString(), address.getPort()),
+                    (int) TimeUnit.SECONDS.toMillis(timeoutSeconds));
+            socketChannel.socket().setTcpNoDelay(true);
+            socketChannel.socket().setSoTimeout((int) TimeUnit.SECONDS.toMillis(timeoutSeconds));
+            String token = BridgeConfig.get(lr, BridgeConfig.AGENT_TOKEN, null);
+            RunnerAgent.writeLine(socketChannel.socket().getOutputStream(), token == null ? lr.name() : lr.name() + " " + token);
+            String answer = RunnerAgent.readLine(socketChannel.socket().getInputStream());
+            socketChannel.socket().setSoTimeout(0);
+            if (!answer.startsWith(RunnerAgent.OK)) {
+                throw new IOException("[" + lr + "-" + index + "] agent " + agent + " failed to start the runner: " + answer);
+            }
+            // validation only happens on one runner so every agent must run the same step implementations
+            String implementationHash = answer.substring(RunnerAgent.OK.length()).trim();
+            String expectedHash = Common.hashDirectory(lr.getImplementationDir());
+            if (!expectedHash.equals(implementationHash)) {
+                throw new IOException("[" + lr + "-" + index + "] agent " + agent + " runs different step implementations");
+            }
+            logger.info("[{}-{}] Connected to runner of agent {}", lr, index, agent);
+            return socketChannel;
+        } catch (IOException | RuntimeException e) {
+            socketChannel.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import gauge.messages.Messages;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A connection to a single language runner.
+ * <p>
+ * Requests are tracked by their {@code messageId} so that many of them can be in flight at the same time,
+ * each response completes the future of the request it answers.
+ * Reads are driven by the {@link BridgeEventLoop}, writes are done by the calling thread and handed over to
+ * the event loop only when the socket buffer is full.
+ * <p>
+ * Every request has a deadline and an idle connection is checked with heartbeats. A runner which misses a deadline,
+ * closes its connection or whose process exits is broken: all its requests fail and the broken handler is called.
+ */
+public class RunnerChannel {
+    private static final Logger logger = LoggerFactory.getLogger(RunnerChannel.class);
+    public static final String LOCAL_NODE = "local";
+    private final LanguageRunner lr;
+    private final int index;
+    private final SocketChannel socketChannel;
+    private final BridgeEventLoop eventLoop;
+    private final BridgeMetrics metrics;
+    private final Map<Long, PendingRequest> pendingRequests;
+    private final FrameCodec codec;
+    private final Queue<ByteBuffer> pendingWrites;
+    private final long[] timeoutNanos;
+    private final long heartbeatIntervalNanos;
+    private final long heartbeatTimeoutNanos;
+    private final AtomicLong heartbeatId;
+    private final AtomicBoolean broken;
+    private volatile long lastActivity;
+    private volatile boolean closing;
+    private volatile Process process;
+    private volatile Consumer<Throwable> brokenHandler;
+    private volatile WireJournal journal;
+    private volatile String node = LOCAL_NODE;
+
+    public RunnerChannel(LanguageRunner lr, int index, SocketChannel socketChannel, BridgeEventLoop eventLoop, BridgeMetrics metrics) {
+        this.lr = lr;
+        this.index = index;
+        this.socketChannel = socketChannel;
+        this.eventLoop = eventLoop;
+        this.metrics = metrics;
+        this.pendingRequests = new ConcurrentHashMap<>();
+        this.codec = new FrameCodec(BridgeConfig.getInt(lr, BridgeConfig.SPILL_THRESHOLD, BridgeConfig.DEFAULT_SPILL_THRESHOLD),
+                Common.getSpillDir());
+        this.pendingWrites = new ArrayDeque<>();
+        int defaultTimeout = BridgeConfig.getInt(lr, BridgeConfig.REQUEST_TIMEOUT, 300);
+        Messages.Message.MessageType[] types = Messages.Message.MessageType.values();
+        this.timeoutNanos = new long[types.length];
+        for (Messages.Message.MessageType type : types) {
+            int timeout = BridgeConfig.getInt(lr, BridgeConfig.REQUEST_TIMEOUT + "_" + type.name(), defaultTimeout);
+            timeoutNanos[type.ordinal()] = TimeUnit.SECONDS.toNanos(timeout);
+        }
+        this.heartbeatIntervalNanos = TimeUnit.SECONDS.toNanos(BridgeConfig.getInt(lr, BridgeConfig.HEARTBEAT_INTERVAL, 30));
+        this.heartbeatTimeoutNanos = TimeUnit.SECONDS.toNanos(BridgeConfig.getInt(lr, BridgeConfig.HEARTBEAT_TIMEOUT, 10));
+        this.heartbeatId = new AtomicLong();
+        this.broken = new AtomicBoolean();
+        this.lastActivity = System.nanoTime();
+    }
+
+    public LanguageRunner getLanguageRunner() {
+        return lr;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the host running the runner, {@link #LOCAL_NODE} or the address of its agent
+     */
+    public String getNode() {
+        return node;
+    }
+
+    public void setNode(String node) {
+        this.node = node;
+    }
+
+    SocketChannel getSocketChannel() {
+        return socketChannel;
+    }
+
+    /**
+     * Write the message to the runner
+     *
+     * @return a future which is completed with the response having the same messageId
+     */
+    public CompletableFuture<Messages.Message> send(Messages.Message msg) {
+        return sendAll(Collections.singletonList(msg)).get(0);
+    }
+
+    /**
+     * Write all messages to the runner at once
+     *
+     * @return futures completed with the responses, in the same order as the messages
+     */
+    public List<CompletableFuture<Messages.Message>> sendAll(List<Messages.Message> msgs) {
+        return write(msgs, -1);
+    }
+
+    /**
+     * @param timeout nanoseconds to wait for the responses, -1 for the timeout of the message type and 0 for no timeout
+     */
+    private List<CompletableFuture<Messages.Message>> write(List<Messages.Message> msgs, long timeout) {
+        List<CompletableFuture<Messages.Message>> futures = new ArrayList<>(msgs.size());
+        List<Messages.Message> accepted = new ArrayList<>(msgs.size());
+        try {
+            for (Messages.Message msg : msgs) {
+                CompletableFuture<Messages.Message> future = new CompletableFuture<>();
+                futures.add(future);
+                long id = msg.getMessageId();
+                if (pendingRequests.putIfAbsent(id, new PendingRequest(future, msg.getMessageType(),
+                        timeout < 0 ? timeoutNanos[msg.getMessageType().ordinal()] : timeout)) != null) {
+                    future.completeExceptionally(new IllegalStateException("[" + this + "] messageId " + id + " is already in flight"));
+                    continue;
+                }
+                logger.debug("Request --- \n{}\n---------", msg);
+                metrics.recordFrameSize(lr, BridgeMetrics.Direction.sent, msg.getSerializedSize());
+                record(BridgeMetrics.Direction.sent, msg);
+                accepted.add(msg);
+            }
+            lastActivity = System.nanoTime();
+            synchronized (pendingWrites) {
+                ByteBuffer data = codec.encode(accepted);
+                if (pendingWrites.isEmpty()) {
+                    socketChannel.write(data);
+                }
+                if (data.hasRemaining()) {
+                    // the encoded buffer is reused by the next write so the remaining bytes are copied
+                    ByteBuffer remaining = ByteBuffer.allocate(data.remaining());
+                    remaining.put(data).flip();
+                    pendingWrites.add(remaining);
+                    eventLoop.requestWrite(this);
+                }
+            }
+        } catch (IOException e) {
+            for (Messages.Message msg : accepted) {
+                PendingRequest request = pendingRequests.remove(msg.getMessageId());
+                if (request != null) {
+                    request.future.completeExceptionally(e);
+                }
+            }
+        }
+        if (broken.get()) {
+            // the requests registered while the runner was being failed would never be answered
+            failAll(new IOException("[" + this + "] runner is broken"));
+        }
+        return futures;
+    }
+
+    /**
+     * Called by the event loop when the socket is writable
+     *
+     * @return true when all pending writes are done
+     */
+    boolean flushPendingWrites() {
+        synchronized (pendingWrites) {
+            try {
+                while (!pendingWrites.isEmpty()) {
+                    ByteBuffer data = pendingWrites.peek();
+                    socketChannel.write(data);
+                    if (data.hasRemaining()) {
+                        return false;
+                    }
+                    pendingWrites.poll();
+                }
+            } catch (IOException e) {
+                pendingWrites.clear();
+                onClosed(e);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Called by the event loop with the bytes read from the socket
+     */
+    void onReceived(ByteBuffer data) throws IOException {
+        lastActivity = System.nanoTime();
+        codec.feed(data);
+        Messages.Message response;
+        while ((response = codec.decode()) != null) {
+            onResponse(response);
+        }
+    }
+
+    void onResponse(Messages.Message response) {
+        logger.debug("Response --- \n{}\n---------", response);
+        metrics.recordFrameSize(lr, BridgeMetrics.Direction.received, response.getSerializedSize());
+        record(BridgeMetrics.Direction.received, response);
+        PendingRequest request = pendingRequests.remove(response.getMessageId());
+        if (request == null) {
+            logger.warn("[{}] No pending request for response with messageId {}", this, response.getMessageId());
+            return;
+        }
+        metrics.recordRoundTrip(lr, request.type, System.nanoTime() - request.sentAt);
+        request.future.complete(response);
+    }
+
+    private void record(BridgeMetrics.Direction direction, Messages.Message msg) {
+        WireJournal current = journal;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.append(direction, msg);
+        } catch (IOException e) {
+            // the runner keeps working without its journal
+            logger.warn("[{}] Unable to write journal {}: {}", this, current.getFile(), e.getMessage());
+            journal = null;
+        }
+    }
+
+    /**
+     * Called by the event loop when the connection is lost
+     */
+    void onClosed(Throwable cause) {
+        if (!closing) {
+            logger.error("[{}] reading socket error", this, cause);
+        }
+        onBroken(new IOException("[" + this + "] runner closed the connection", cause));
+    }
+
+    /**
+     * Called by the event loop about once a second to expire requests and send heartbeats
+     */
+    void checkTimeouts(long now) {
+        if (closing || broken.get()) {
+            return;
+        }
+        for (PendingRequest request : pendingRequests.values()) {
+            if (request.timeout != 0 && now - request.sentAt > request.timeout) {
+                onBroken(new TimeoutException("[" + this + "] no response to " + request.type + " within "
+                        + TimeUnit.NANOSECONDS.toSeconds(request.timeout) + " seconds"));
+                return;
+            }
+        }
+        if (heartbeatIntervalNanos > 0 && pendingRequests.isEmpty() && now - lastActivity > heartbeatIntervalNanos) {
+            // heartbeats use negative ids so they never collide with the ids of the runtime,
+            // looking up an empty step is answered without going through the step implementations
+            Messages.Message heartbeat = Messages.Message.newBuilder()
+                    .setMessageId(-heartbeatId.incrementAndGet())
+                    .setMessageType(Messages.Message.MessageType.StepNameRequest)
+                    .setStepNameRequest(Messages.StepNameRequest.newBuilder().build())
+                    .build();
+            logger.debug("[{}] Heartbeat", this);
+            write(Collections.singletonList(heartbeat), heartbeatTimeoutNanos);
+        }
+    }
+
+    /**
+     * The runner can not be used anymore, fail its requests, kill it and let the owner replace it
+     */
+    void onBroken(Throwable cause) {
+        if (!broken.compareAndSet(false, true)) {
+            return;
+        }
+        kill();
+        failAll(cause);
+        Consumer<Throwable> handler = brokenHandler;
+        if (!closing && handler != null) {
+            handler.accept(cause);
+        }
+    }
+
+    /**
+     * Fail all requests which are still waiting for a response
+     */
+    void failAll(Throwable cause) {
+        for (Long id : pendingRequests.keySet()) {
+            PendingRequest request = pendingRequests.remove(id);
+            if (request != null) {
+                request.future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    public int getInFlightCount() {
+        return pendingRequests.size();
+    }
+
+    public boolean isClosing() {
+        return closing;
+    }
+
+    public void markClosing() {
+        this.closing = true;
+    }
+
+    /**
+     * @param brokenHandler called at most once when the runner is broken, on the thread which found it broken:
+     *                      the event loop or the thread waiting for the runner process. It must not block.
+     *                      A runner broken before the handler is set does not call it, check {@link #isBroken()} after.
+     */
+    public void setBrokenHandler(Consumer<Throwable> brokenHandler) {
+        this.brokenHandler = brokenHandler;
+    }
+
+    /**
+     * The process of the runner, it is killed when the runner is broken
+     */
+    public void attachProcess(Process process) {
+        this.process = process;
+    }
+
+    /**
+     * @param journal records every message sent and received from now on, it is shared by the runners which replace this one
+     */
+    public void setJournal(WireJournal journal) {
+        this.journal = journal;
+    }
+
+    public boolean isBroken() {
+        return broken.get();
+    }
+
+    /**
+     * Close the connection and kill the runner process
+     */
+    public void kill() {
+        close();
+        Process runner = process;
+        if (runner != null) {
+            runner.destroyForcibly();
+        }
+    }
+
+    public void close() {
+        try {
+            socketChannel.close();
+        } catch (IOException e) {
+            logger.warn("closing socket error: {}", e.getMessage());
+        }
+        codec.close();
+    }
+
+    @Override
+    public String toString() {
+        return lr + "-" + index;
+    }
+
+    private static class PendingRequest {
+        private final CompletableFuture<Messages.Message> future;
+        private final Messages.Message.MessageType type;
+        private final long sentAt;
+        private final long timeout;
+
+        private PendingRequest(CompletableFuture<Messages.Message> future, Messages.Message.MessageType type, long timeout) {
+            this.future = future;
+            this.type = type;
+            this.sentAt = System.nanoTime();
+            this.timeout = timeout;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import gauge.messages.Messages;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a runner process alive across suite runs.
+ * <p>
+ * The daemon is started detached from the bridge by {@link RunnerDaemonClient}. It launches the runner, accepts its connection
+ * and registers a local endpoint in {@code target/gauge/daemon}. Each bridge connection is answered with a line,
+ * {@code OK} or {@code ERROR <reason>} when another bridge is already connected. Whole frames are then relayed between
+ * the runner and the connected bridge. The daemon numbers the requests itself, as every bridge starts its message ids
+ * at 1, so the responses to the requests of a previous bridge are dropped instead of completing the requests of the next one.
+ * The runner is killed once no bridge connected for {@code gauge_bridge_daemon_idle_timeout} minutes.
+ */
+public class RunnerDaemon {
+    private static final Logger logger = LoggerFactory.getLogger(RunnerDaemon.class);
+    private final LanguageRunner lr;
+    private final int index;
+    private final FakeRunner fakeRunner;
+    private final Object clientLock = new Object();
+    private final FrameCodec clientCodec = new FrameCodec();
+    // message id given to the runner -> message id of the connected bridge, guarded by clientLock
+    private final Map<Long, Long> pendingIds = new HashMap<>();
+    private final Object runnerLock = new Object();
+    private final FrameCodec runnerCodec = new FrameCodec();
+    private final AtomicInteger connections = new AtomicInteger();
+    private long nextMessageId;
+    private Socket client;
+    private Socket runnerSocket;
+    private Process runner;
+    private volatile ServerSocket clientServer;
+    private RunnerDaemonClient.Registration registration;
+
+    public RunnerDaemon(LanguageRunner lr, int index) {
+        this(lr, index, BridgeConfig.getBoolean(lr, BridgeConfig.FAKE_RUNNER, false) ? FakeRunner.fromConfig(lr) : null);
+    }
+
+    /**
+     * @param fakeRunner runner served in the daemon JVM instead of the runner process, null to start the process
+     */
+    RunnerDaemon(LanguageRunner lr, int index, FakeRunner fakeRunner) {
+        this.lr = lr;
+        this.index = index;
+        this.fakeRunner = fakeRunner;
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: RunnerDaemon <runner> <index>");
+            System.exit(2);
+        }
+        try {
+            new RunnerDaemon(LanguageRunner.valueOf(args[0]), Integer.parseInt(args[1])).run();
+        } catch (Exception e) {
+            logger.error("Runner daemon failed", e);
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Serve bridges until the runner exits or no bridge connected for the idle timeout
+     */
+    public void run() throws IOException {
+        int startupTimeout = BridgeConfig.getInt(lr, BridgeConfig.STARTUP_TIMEOUT, 60);
+        int idleTimeout = BridgeConfig.getInt(lr, BridgeConfig.DAEMON_IDLE_TIMEOUT, 30);
+        File log = RunnerDaemonClient.getLogFile(lr, index);
+        BridgeExecutor executor = BridgeExecutor.fromConfig();
+        String name = String.format("daemon-%s-%d", lr, index);
+        try {
+            try (ServerSocket runnerServer = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                runnerServer.setSoTimeout((int) TimeUnit.SECONDS.toMillis(startupTimeout));
+                Map<String, String> runnerEnvironment = Collections.singletonMap(TcpTransport.GAUGE_INTERNAL_PORT,
+                        String.valueOf(runnerServer.getLocalPort()));
+                if (fakeRunner != null) {
+                    executor.execute(name + "-fake", () -> fakeRunner.run(runnerEnvironment));
+                } else {
+                    runner = RunnerProcess.start(lr, runnerEnvironment, log);
+                }
+                runnerSocket = runnerServer.accept();
+                runnerSocket.setTcpNoDelay(true);
+            }
+            try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+                clientServer = server;
+                server.setSoTimeout((int) TimeUnit.MINUTES.toMillis(idleTimeout));
+                registration = RunnerDaemonClient.newRegistration(lr, server.getLocalPort(), fakeRunner != null);
+                RunnerDaemonClient.writeRegistration(lr, index, registration);
+                logger.info("[{}-{}] Runner daemon listening on {}", lr, index, server.getLocalPort());
+
+                executor.execute(name, this::relayRunnerOutput);
+                while (!server.isClosed()) {
+                    Socket bridge;
+                    try {
+                        bridge = server.accept();
+                    } catch (SocketTimeoutException e) {
+                        if (isConnected()) {
+                            continue;
+                        }
+                        logger.info("[{}-{}] No bridge connected for {} minutes, stopping", lr, index, idleTimeout);
+                        break;
+                    } catch (IOException e) {
+                        if (server.isClosed()) {
+                            break;
+                        }
+                        throw e;
+                    }
+                    executor.execute(name + "-bridge-" + connections.incrementAndGet(), () -> relayClient(bridge));
+                }
+            }
+        } finally {
+            stop();
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @return the port bridges connect to, 0 until the daemon is listening
+     */
+    int getPort() {
+        ServerSocket server = clientServer;
+        return server == null ? 0 : server.getLocalPort();
+    }
+
+    private boolean isConnected() {
+        synchronized (clientLock) {
+            return client != null;
+        }
+    }
+
+    /**
+     * Forward the frames of the bridge to the runner until the bridge disconnects
+     */
+    private void relayClient(Socket socket) {
+        try (Socket bridge = socket) {
+            bridge.setTcpNoDelay(true);
+            OutputStream out = new BufferedOutputStream(bridge.getOutputStream());
+            synchronized (clientLock) {
+                if (client != null) {
+                    logger.warn("[{}-{}] Rejecting bridge {}, another bridge is connected", lr, index, bridge.getRemoteSocketAddress());
+                    RunnerAgent.writeLine(out, RunnerAgent.ERROR + " runner daemon is used by another bridge");
+                    return;
+                }
+                // the runner may still answer the requests of the previous bridge, these responses are dropped
+                pendingIds.clear();
+                client = bridge;
+                RunnerAgent.writeLine(out, RunnerAgent.OK);
+            }
+            FrameCodec codec = new FrameCodec();
+            InputStream in = bridge.getInputStream();
+            try {
+                while (codec.readFrom(in) >= 0) {
+                    Messages.Message msg;
+                    while ((msg = codec.decode()) != null) {
+                        long messageId;
+                        synchronized (clientLock) {
+                            messageId = ++nextMessageId;
+                            pendingIds.put(messageId, msg.getMessageId());
+                        }
+                        writeToRunner(msg.toBuilder().setMessageId(messageId).build());
+                    }
+                }
+            } finally {
+                synchronized (clientLock) {
+                    client = null;
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("[{}-{}] bridge disconnected: {}", lr, index, e.getMessage());
+        }
+    }
+
+    /**
+     * Forward the frames of the runner to the bridge which sent the request, the daemon stops when the runner
+     * closes its connection
+     */
+    private void relayRunnerOutput() {
+        try {
+            FrameCodec codec = new FrameCodec();
+            InputStream in = runnerSocket.getInputStream();
+            while (codec.readFrom(in) >= 0) {
+                Messages.Message msg;
+                while ((msg = codec.decode()) != null) {
+                    writeToClient(msg);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("[{}-{}] reading runner error: {}", lr, index, e.getMessage());
+        }
+        logger.info("[{}-{}] Runner closed its connection, stopping", lr, index);
+        ServerSocket server = clientServer;
+        if (server != null) {
+            try {
+                server.close();
+            } catch (IOException e) {
+                logger.debug("closing daemon server error: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void writeToClient(Messages.Message msg) {
+        synchronized (clientLock) {
+            Long messageId = pendingIds.remove(msg.getMessageId());
+            if (messageId == null || client == null) {
+                logger.warn("[{}-{}] Dropping {} from runner, the bridge which sent the request is gone", lr, index, msg.getMessageType());
+                return;
+            }
+            try {
+                ByteBuffer data = clientCodec.encode(msg.toBuilder().setMessageId(messageId).build());
+                OutputStream out = client.getOutputStream();
+                out.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+                out.flush();
+            } catch (IOException e) {
+                logger.debug("[{}-{}] bridge disconnected: {}", lr, index, e.getMessage());
+            }
+        }
+    }
+
+    private void writeToRunner(Messages.Message msg) throws IOException {
+        synchronized (runnerLock) {
+            ByteBuffer data = runnerCodec.encode(msg);
+            OutputStream out = runnerSocket.getOutputStream();
+            out.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            out.flush();
+        }
+    }
+
+    private synchronized void stop() {
+        if (registration != null) {
+            RunnerDaemonClient.deleteRegistration(lr, index, registration);
+            registration = null;
+        }
+        synchronized (clientLock) {
+            if (client != null) {
+                try {
+                    client.close();
+                } catch (IOException e) {
+                    logger.debug("closing bridge connection error: {}", e.getMessage());
+                }
+            }
+        }
+        if (runnerSocket != null && !runnerSocket.isClosed() && (runner == null || runner.isAlive())) {
+            try {
+                writeToRunner(Messages.Message.newBuilder()
+                        .setMessageType(Messages.Message.MessageType.KillProcessRequest)
+                        .setKillProcessRequest(Messages.KillProcessRequest.newBuilder()
+                                .build())
+                        .build());
+                if (runner != null) {
+                    runner.waitFor(10, TimeUnit.SECONDS);
+                }
+                runnerSocket.close();
+            } catch (IOException e) {
+                logger.warn("[{}-{}] Unable to send kill request: {}", lr, index, e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (runner != null) {
+            runner.destroy();
+        }
+    }
+}
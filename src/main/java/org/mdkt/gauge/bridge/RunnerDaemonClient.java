@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gauge.messages.Messages;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connects the bridge to a {@link RunnerDaemon}, reusing the registered one when it runs the same
+ * plugin version and step implementations, or starting a new one otherwise
+ */
+public class RunnerDaemonClient {
+    private static final Logger logger = LoggerFactory.getLogger(RunnerDaemonClient.class);
+    private static final String DAEMON_DIR = "target/gauge/daemon";
+
+    static class Registration {
+        public int port;
+        public String pluginVersion;
+        public String implementationHash;
+    }
+
+    /**
+     * @return a blocking socket channel connected to the daemon
+     */
+    public static SocketChannel connect(LanguageRunner lr, int index, int timeoutSeconds) throws IOException {
+        SocketChannel reused = tryReuse(lr, index);
+        if (reused != null) {
+            logger.info("[{}-{}] Reusing runner daemon", lr, index);
+            return reused;
+        }
+        spawn(lr, index);
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        while (System.currentTimeMillis() < deadline) {
+            Registration registration = readRegistration(lr, index);
+            if (registration != null) {
+                return open(lr, index, registration.port);
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for the runner daemon", e);
+            }
+        }
+        throw new IOException("[" + lr + "-" + index + "] runner daemon did not start within " + timeoutSeconds + " seconds, see " + getLogFile(lr, index));
+    }
+
+    /**
+     * Connect to the daemon listening on the port and read its answer
+     *
+     * @throws IOException if the daemon refuses the connection, when another bridge is connected to it
+     */
+    static SocketChannel open(LanguageRunner lr, int index, int port) throws IOException {
+        return handshake(lr, index, SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port)));
+    }
+
+    private static SocketChannel handshake(LanguageRunner lr, int index, SocketChannel socketChannel) throws IOException {
+        String answer;
+        try {
+            // the daemon does not send anything else before the first request
+            answer = RunnerAgent.readLine(socketChannel.socket().getInputStream());
+        } catch (IOException e) {
+            socketChannel.close();
+            throw e;
+        }
+        if (!answer.startsWith(RunnerAgent.OK)) {
+            socketChannel.close();
+            throw new IOException("[" + lr + "-" + index + "] runner daemon refused the connection: " + answer);
+        }
+        return socketChannel;
+    }
+
+    private static SocketChannel tryReuse(LanguageRunner lr, int index) throws IOException {
+        Registration registration = readRegistration(lr, index);
+        if (registration == null) {
+            return null;
+        }
+        SocketChannel socketChannel;
+        try {
+            socketChannel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), registration.port));
+        } catch (IOException e) {
+            logger.debug("[{}-{}] Registered runner daemon is gone: {}", lr, index, e.getMessage());
+            getRegistrationFile(lr, index).delete();
+            return null;
+        }
+        handshake(lr, index, socketChannel);
+        Registration current = newRegistration(lr, registration.port, BridgeConfig.getBoolean(lr, BridgeConfig.FAKE_RUNNER, false));
+        if (Objects.equals(current.pluginVersion, registration.pluginVersion)
+                && Objects.equals(current.implementationHash, registration.implementationHash)) {
+            return socketChannel;
+        }
+        logger.info("[{}-{}] Runner daemon is outdated, replacing it", lr, index);
+        try (SocketChannel outdated = socketChannel) {
+            ByteBuffer kill = new FrameCodec().encode(Messages.Message.newBuilder()
+                    .setMessageType(Messages.Message.MessageType.KillProcessRequest)
+                    .setKillProcessRequest(Messages.KillProcessRequest.newBuilder()
+                            .build())
+                    .build());
+            while (kill.hasRemaining()) {
+                outdated.write(kill);
+            }
+        } catch (IOException e) {
+            logger.warn("[{}-{}] Unable to stop outdated runner daemon: {}", lr, index, e.getMessage());
+        }
+        getRegistrationFile(lr, index).delete();
+        return null;
+    }
+
+    private static void spawn(LanguageRunner lr, int index) throws IOException {
+        File log = getLogFile(lr, index);
+        log.getParentFile().mkdirs();
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath();
+        new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                RunnerDaemon.class.getName(), lr.name(), String.valueOf(index))
+                .directory(Common.getProjectRoot())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(log))
+                .start();
+        logger.info("[{}-{}] Started runner daemon, output in {}", lr, index, log);
+    }
+
+    /**
+     * @param fake true if the daemon serves a {@link FakeRunner}, which has no plugin version
+     */
+    static Registration newRegistration(LanguageRunner lr, int port, boolean fake) {
+        Registration registration = new Registration();
+        registration.port = port;
+        registration.pluginVersion = fake ? FakeRunner.class.getSimpleName() : Common.getPluginVersion(lr.name());
+        registration.implementationHash = Common.hashDirectory(lr.getImplementationDir());
+        return registration;
+    }
+
+    static void writeRegistration(LanguageRunner lr, int index, Registration registration) throws IOException {
+        File file = getRegistrationFile(lr, index);
+        file.getParentFile().mkdirs();
+        // written aside then moved so the bridge never reads a partial file
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        new ObjectMapper().writeValue(tmp, registration);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Delete the registration unless another daemon has replaced it
+     */
+    static void deleteRegistration(LanguageRunner lr, int index, Registration registration) {
+        Registration current = readRegistration(lr, index);
+        if (current != null && current.port == registration.port) {
+            getRegistrationFile(lr, index).delete();
+        }
+    }
+
+    /**
+     * Forget the daemon of a broken runner so that the next connection starts a new one,
+     * the old daemon stops after its idle timeout
+     */
+    static void discard(LanguageRunner lr, int index) {
+        logger.warn("[{}-{}] Discarding runner daemon", lr, index);
+        getRegistrationFile(lr, index).delete();
+    }
+
+    private static Registration readRegistration(LanguageRunner lr, int index) {
+        File file = getRegistrationFile(lr, index);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return new ObjectMapper().readValue(file, Registration.class);
+        } catch (IOException e) {
+            logger.warn("[{}-{}] Unable to read runner daemon registration {}: {}", lr, index, file, e.getMessage());
+            return null;
+        }
+    }
+
+    static File getRegistrationFile(LanguageRunner lr, int index) {
+        return new File(Common.getProjectRoot(), DAEMON_DIR + "/" + lr + "-" + index + ".json");
+    }
+
+    static File getLogFile(LanguageRunner lr, int index) {
+        return new File(Common.getProjectRoot(), DAEMON_DIR + "/" + lr + "-" + index + ".log");
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runner processes of a single language.
+ * <p>
+ * A runner is leased by the first proxied step of a scenario and kept by the scenario thread
+ * until {@link #release()}, so the state of a scenario stays on one runner.
+ * The idle runner leased is the one of the node, local or agent, with the fewest leased runners.
+ * When all runners are leased, callers wait for one to be released.
+ */
+public class RunnerPool {
+    private static final Logger logger = LoggerFactory.getLogger(RunnerPool.class);
+    private final LanguageRunner lr;
+    private final List<RunnerChannel> channels;
+    private final List<RunnerChannel> idleChannels;
+    private final ThreadLocal<RunnerChannel> leasedChannel;
+    private final int leaseTimeout;
+    private final AtomicReference<RunnerChannel> spare;
+
+    public RunnerPool(LanguageRunner lr) {
+        this.lr = lr;
+        this.channels = new CopyOnWriteArrayList<>();
+        this.idleChannels = new ArrayList<>();
+        this.leasedChannel = new ThreadLocal<>();
+        this.leaseTimeout = BridgeConfig.getInt(lr, BridgeConfig.LEASE_TIMEOUT, 300);
+        this.spare = new AtomicReference<>();
+    }
+
+    public void add(RunnerChannel channel) {
+        channels.add(channel);
+        synchronized (idleChannels) {
+            idleChannels.add(channel);
+            idleChannels.notify();
+        }
+    }
+
+    /**
+     * Take a broken runner out of the pool, a scenario which has leased it keeps it until it is released
+     *
+     * @return false if the runner was not in the pool
+     */
+    public boolean remove(RunnerChannel channel) {
+        synchronized (idleChannels) {
+            idleChannels.remove(channel);
+        }
+        return channels.remove(channel);
+    }
+
+    /**
+     * Keep a started runner out of the pool until {@link #takeSpare()}
+     *
+     * @return false if there is already a spare
+     */
+    public boolean setSpare(RunnerChannel channel) {
+        return spare.compareAndSet(null, channel);
+    }
+
+    /**
+     * @return the spare runner, null if there is none
+     */
+    public RunnerChannel takeSpare() {
+        return spare.getAndSet(null);
+    }
+
+    /**
+     * @return the spare runner, which stays the spare, null if there is none
+     */
+    RunnerChannel getSpare() {
+        return spare.get();
+    }
+
+    /**
+     * @return false if the runner is not the spare anymore
+     */
+    public boolean removeSpare(RunnerChannel channel) {
+        return spare.compareAndSet(channel, null);
+    }
+
+    public LanguageRunner getLanguageRunner() {
+        return lr;
+    }
+
+    public List<RunnerChannel> getChannels() {
+        return channels;
+    }
+
+    /**
+     * @return the runner already leased by the current thread or the idle runner of the least busy node
+     */
+    public RunnerChannel lease() {
+        RunnerChannel channel = leasedChannel.get();
+        if (channel != null) {
+            return channel;
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(leaseTimeout);
+        synchronized (idleChannels) {
+            while (idleChannels.isEmpty()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new RuntimeException("[" + lr + "] no idle runner after " + leaseTimeout + " seconds, all " + channels.size() + " runners are busy");
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(idleChannels, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("[" + lr + "] interrupted while waiting for an idle runner", e);
+                }
+            }
+            channel = leastBusy();
+            idleChannels.remove(channel);
+        }
+        logger.debug("[{}] Leased {} on {}", lr, channel, channel.getNode());
+        leasedChannel.set(channel);
+        return channel;
+    }
+
+    /**
+     * Pools are small, the leased runners of each node are counted on each lease
+     */
+    private RunnerChannel leastBusy() {
+        Map<String, Integer> leased = new HashMap<>();
+        for (RunnerChannel channel : channels) {
+            if (!idleChannels.contains(channel)) {
+                leased.merge(channel.getNode(), 1, Integer::sum);
+            }
+        }
+        RunnerChannel best = null;
+        int bestLeased = Integer.MAX_VALUE;
+        for (RunnerChannel channel : idleChannels) {
+            int nodeLeased = leased.getOrDefault(channel.getNode(), 0);
+            if (nodeLeased < bestLeased) {
+                best = channel;
+                bestLeased = nodeLeased;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Give the runner leased by the current thread back to the pool
+     */
+    public void release() {
+        RunnerChannel channel = leasedChannel.get();
+        if (channel == null) {
+            return;
+        }
+        leasedChannel.remove();
+        logger.debug("[{}] Released {}", lr, channel);
+        if (channels.contains(channel)) {
+            synchronized (idleChannels) {
+                idleChannels.add(channel);
+                idleChannels.notify();
+            }
+        }
+    }
+}
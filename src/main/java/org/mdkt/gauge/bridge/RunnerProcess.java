@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang.SystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Launches a runner process with the command given by its plugin descriptor
+ */
+public class RunnerProcess {
+
+    static class RunnerInfo {
+        public String id;
+        public String name;
+        public String version;
+        public String description;
+        public Map<String, List<String>> run;
+        public Map<String, List<String>> init;
+        public Map<String, String> gaugeVersionSupport;
+        public String lspLangId;
+    }
+
+    private static RunnerInfo getRunnerInfo(LanguageRunner language) {
+        String pluginJsonPath = Common.getLanguageJSONFilePath(language.name());
+        try {
+            return new ObjectMapper().readValue(new File(pluginJsonPath), RunnerInfo.class);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read descriptor for language " + language, e);
+        }
+    }
+
+    /**
+     * @param runnerEnvironment variables added to the environment of the runner
+     * @param log               file receiving the output of the runner, null to inherit the output of this process
+     */
+    public static Process start(LanguageRunner language, Map<String, String> runnerEnvironment, File log) {
+        RunnerInfo info = getRunnerInfo(language);
+        List<String> cmd = null;
+        if (SystemUtils.IS_OS_WINDOWS) {
+            cmd = info.run.get("windows");
+        } else if (SystemUtils.IS_OS_MAC || SystemUtils.IS_OS_MAC_OSX) {
+            cmd = info.run.get("darwin");
+        } else if (SystemUtils.IS_OS_LINUX) {
+            cmd = info.run.get("linux");
+        }
+        if (cmd == null) {
+            throw new RuntimeException("No command found for the OS");
+        }
+        try {
+            ProcessBuilder processBuilder = new ProcessBuilder()
+                    .command(cmd)
+                    .directory(new File(Common.getLanguageJSONFilePath(language.name())).getParentFile());
+            if (log == null) {
+                processBuilder.inheritIO();
+            } else {
+                processBuilder.redirectErrorStream(true)
+                        .redirectOutput(ProcessBuilder.Redirect.appendTo(log));
+            }
+            processBuilder.environment().putAll(runnerEnvironment);
+            return processBuilder.start();
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to execute command " + cmd, e);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Map;
+
+/**
+ * How a runner connects back to the bridge. The transport is chosen per runner with {@code gauge_bridge_<runner>_transport}
+ */
+public interface RunnerTransport {
+
+    /**
+     * Open the server the runner connects to
+     */
+    ServerSocketChannel bind(LanguageRunner lr, int index) throws IOException;
+
+    /**
+     * @return environment variables telling the runner process where to connect
+     */
+    Map<String, String> getRunnerEnvironment(ServerSocketChannel server) throws IOException;
+
+    /**
+     * Close the server once the runner is connected or failed to connect
+     */
+    default void close(ServerSocketChannel server) throws IOException {
+        server.close();
+    }
+
+    static RunnerTransport forRunner(LanguageRunner lr) {
+        String transport = BridgeConfig.get(lr, BridgeConfig.TRANSPORT, TcpTransport.NAME);
+        switch (transport.toLowerCase()) {
+            case TcpTransport.NAME:
+                return new TcpTransport();
+            case UnixDomainSocketTransport.NAME:
+                return new UnixDomainSocketTransport();
+            default:
+                throw new RuntimeException("[" + lr + "] unknown transport " + transport);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.ByteString;
+import gauge.messages.Spec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Results of {@link Memoized} steps keyed by their serialized {@code ExecuteStepRequest}, which holds the step and its parameters.
+ * <p>
+ * The least recently used entries are evicted above the maximum size. Entries of persistent steps are written to disk
+ * and only reused by a later run when the runner plugin version and the content hash of the step implementation
+ * directory are the same, like {@link StepValidationCache}.
+ */
+public class StepResultCache {
+    private static final Logger logger = LoggerFactory.getLogger(StepResultCache.class);
+    private static final String CACHE_DIR = "target/gauge/memo";
+    private final LanguageRunner lr;
+    private final File file;
+    private final String pluginVersion;
+    private final String implementationHash;
+    private final LongSupplier clock;
+    private final Map<ByteString, CacheEntry> entries;
+
+    StepResultCache(LanguageRunner lr, int maxSize, File file, String pluginVersion, String implementationHash, LongSupplier clock) {
+        this.lr = lr;
+        this.file = file;
+        this.pluginVersion = pluginVersion;
+        this.implementationHash = implementationHash;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<ByteString, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteString, CacheEntry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return a cache which lives as long as the suite
+     */
+    public static StepResultCache create(LanguageRunner lr, int maxSize) {
+        return new StepResultCache(lr, maxSize, null, null, null, System::currentTimeMillis);
+    }
+
+    /**
+     * @return a cache with the persistent results of the previous runs which are still valid
+     */
+    public static StepResultCache load(LanguageRunner lr, int maxSize) {
+        StepResultCache cache = new StepResultCache(lr, maxSize,
+                new File(Common.getProjectRoot(), CACHE_DIR + "/" + lr + ".json"),
+                Common.getPluginVersion(lr.name()),
+                Common.hashDirectory(lr.getImplementationDir()),
+                System::currentTimeMillis);
+        if (!cache.file.isFile()) {
+            return cache;
+        }
+        try {
+            CacheFile content = new ObjectMapper().readValue(cache.file, CacheFile.class);
+            if (cache.pluginVersion.equals(content.pluginVersion)
+                    && cache.implementationHash.equals(content.implementationHash)
+                    && content.results != null) {
+                for (CachedResult cachedResult : content.results) {
+                    cache.entries.put(ByteString.copyFrom(cachedResult.request),
+                            new CacheEntry(Spec.ProtoExecutionResult.parseFrom(cachedResult.result), cachedResult.expiresAt, true));
+                }
+            } else {
+                logger.info("[{}] Step result cache is outdated", lr);
+            }
+        } catch (IOException e) {
+            logger.warn("[{}] Unable to read step result cache {}: {}", lr, cache.file, e.getMessage());
+        }
+        return cache;
+    }
+
+    /**
+     * @return the result of a previous execution of the same request, null if the step has to be executed
+     */
+    public synchronized Spec.ProtoExecutionResult get(ByteString request) {
+        CacheEntry entry = entries.get(request);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(clock.getAsLong())) {
+            entries.remove(request);
+            return null;
+        }
+        return entry.result;
+    }
+
+    public synchronized void put(ByteString request, Spec.ProtoExecutionResult result, Memoized memoized) {
+        long expiresAt = memoized.ttl() > 0 ? clock.getAsLong() + TimeUnit.SECONDS.toMillis(memoized.ttl()) : 0;
+        entries.put(request, new CacheEntry(result, expiresAt, memoized.persistent()));
+    }
+
+    /**
+     * Write the persistent results which have not expired to disk
+     */
+    public synchronized void save() {
+        if (file == null) {
+            return;
+        }
+        long now = clock.getAsLong();
+        CacheFile content = new CacheFile();
+        content.pluginVersion = pluginVersion;
+        content.implementationHash = implementationHash;
+        content.results = new ArrayList<>();
+        for (Map.Entry<ByteString, CacheEntry> entry : entries.entrySet()) {
+            if (entry.getValue().persistent && !entry.getValue().isExpired(now)) {
+                CachedResult cachedResult = new CachedResult();
+                cachedResult.request = entry.getKey().toByteArray();
+                cachedResult.result = entry.getValue().result.toByteArray();
+                cachedResult.expiresAt = entry.getValue().expiresAt;
+                content.results.add(cachedResult);
+            }
+        }
+        if (content.results.isEmpty() && !file.isFile()) {
+            return;
+        }
+        try {
+            file.getParentFile().mkdirs();
+            new ObjectMapper().writeValue(file, content);
+        } catch (IOException e) {
+            logger.warn("[{}] Unable to write step result cache {}: {}", lr, file, e.getMessage());
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static class CacheEntry {
+        private final Spec.ProtoExecutionResult result;
+        private final long expiresAt;
+        private final boolean persistent;
+
+        private CacheEntry(Spec.ProtoExecutionResult result, long expiresAt, boolean persistent) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+            this.persistent = persistent;
+        }
+
+        private boolean isExpired(long now) {
+            return expiresAt != 0 && expiresAt <= now;
+        }
+    }
+
+    static class CacheFile {
+        public String pluginVersion;
+        public String implementationHash;
+        public List<CachedResult> results;
+    }
+
+    static class CachedResult {
+        public byte[] request;
+        public byte[] result;
+        public long expiresAt;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thoughtworks.gauge.StepValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Remembers steps which have been validated successfully by a runner so that warm runs can skip the validation round trips.
+ * <p>
+ * Entries are keyed by the step text and only reused when the runner plugin version and
+ * the content hash of the step implementation directory are the same as when they were validated.
+ */
+public class StepValidationCache {
+    private static final Logger logger = LoggerFactory.getLogger(StepValidationCache.class);
+    private static final String CACHE_DIR = "target/gauge/validation";
+    private final LanguageRunner lr;
+    private final File file;
+    private final String pluginVersion;
+    private final String implementationHash;
+    private final Map<String, CachedStep> steps;
+
+    private StepValidationCache(LanguageRunner lr, File file, String pluginVersion, String implementationHash) {
+        this.lr = lr;
+        this.file = file;
+        this.pluginVersion = pluginVersion;
+        this.implementationHash = implementationHash;
+        this.steps = new HashMap<>();
+    }
+
+    public static StepValidationCache load(LanguageRunner lr) {
+        return load(lr, new File(Common.getProjectRoot(), CACHE_DIR), Common.getPluginVersion(lr.name()),
+                Common.hashDirectory(lr.getImplementationDir()));
+    }
+
+    static StepValidationCache load(LanguageRunner lr, File dir, String pluginVersion, String implementationHash) {
+        StepValidationCache cache = new StepValidationCache(lr, new File(dir, lr + ".json"), pluginVersion, implementationHash);
+        if (!cache.file.isFile()) {
+            return cache;
+        }
+        try {
+            CacheFile content = new ObjectMapper().readValue(cache.file, CacheFile.class);
+            if (cache.pluginVersion.equals(content.pluginVersion)
+                    && cache.implementationHash.equals(content.implementationHash)
+                    && content.steps != null) {
+                cache.steps.putAll(content.steps);
+            } else {
+                logger.info("[{}] Validation cache is outdated", lr);
+            }
+        } catch (IOException e) {
+            logger.warn("[{}] Unable to read validation cache {}: {}", lr, cache.file, e.getMessage());
+        }
+        return cache;
+    }
+
+    /**
+     * @return the step value of a step which has already been validated, null if it has to be validated
+     */
+    public synchronized StepValue get(String step) {
+        CachedStep cachedStep = steps.get(step);
+        if (cachedStep == null) {
+            return null;
+        }
+        return new StepValue(cachedStep.stepText, cachedStep.parameterizedStepText, cachedStep.parameters);
+    }
+
+    public synchronized void put(String step, StepValue sv) {
+        CachedStep cachedStep = new CachedStep();
+        cachedStep.stepText = sv.getStepText();
+        cachedStep.parameterizedStepText = sv.getStepAnnotationText();
+        cachedStep.parameters = new ArrayList<>(sv.getParameters());
+        steps.put(step, cachedStep);
+    }
+
+    /**
+     * Keep only the given steps and write the cache to disk
+     */
+    public synchronized void save(Collection<String> validSteps) {
+        steps.keySet().retainAll(validSteps);
+        CacheFile content = new CacheFile();
+        content.pluginVersion = pluginVersion;
+        content.implementationHash = implementationHash;
+        content.steps = new TreeMap<>(steps);
+        try {
+            file.getParentFile().mkdirs();
+            new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, content);
+        } catch (IOException e) {
+            logger.warn("[{}] Unable to write validation cache {}: {}", lr, file, e.getMessage());
+        }
+    }
+
+    static class CacheFile {
+        public String pluginVersion;
+        public String implementationHash;
+        public Map<String, CachedStep> steps;
+    }
+
+    static class CachedStep {
+        public String stepText;
+        public String parameterizedStepText;
+        public List<String> parameters;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The runner connects to a TCP port given by {@code GAUGE_INTERNAL_PORT}, this is what all Gauge runners support
+ */
+public class TcpTransport implements RunnerTransport {
+    public static final String NAME = "tcp";
+    static final String GAUGE_INTERNAL_PORT = "GAUGE_INTERNAL_PORT";
+
+    @Override
+    public ServerSocketChannel bind(LanguageRunner lr, int index) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(0));
+        return server;
+    }
+
+    @Override
+    public Map<String, String> getRunnerEnvironment(ServerSocketChannel server) {
+        return Collections.singletonMap(GAUGE_INTERNAL_PORT, String.valueOf(server.socket().getLocalPort()));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The runner connects to a Unix domain socket whose path is given by {@code GAUGE_INTERNAL_SOCKET}.
+ * <p>
+ * This skips the TCP stack and does not use ephemeral ports, but it needs a JDK 16+ and a runner reading
+ * {@code GAUGE_INTERNAL_SOCKET}. Gauge runners do not read it, only the fake and replay runners of the bridge do.
+ * The JDK API is looked up by reflection as the bridge is built for Java 8.
+ * <p>
+ * A transport binds a single server, the socket is deleted when the server is closed.
+ */
+public class UnixDomainSocketTransport implements RunnerTransport {
+    public static final String NAME = "uds";
+    static final String GAUGE_INTERNAL_SOCKET = "GAUGE_INTERNAL_SOCKET";
+    private Path path;
+
+    @Override
+    public ServerSocketChannel bind(LanguageRunner lr, int index) throws IOException {
+        // socket paths are limited to about 100 characters so they are kept in a short temporary directory
+        path = Files.createTempDirectory("gauge-bridge").resolve(lr + "-" + index + ".sock");
+        try {
+            Method open = ServerSocketChannel.class.getMethod("open", ProtocolFamily.class);
+            ServerSocketChannel server = (ServerSocketChannel) open.invoke(null, getProtocolFamily());
+            try {
+                server.bind(newAddress(path));
+            } catch (IOException e) {
+                server.close();
+                throw e;
+            }
+            return server;
+        } catch (IOException | RuntimeException | ReflectiveOperationException e) {
+            deleteSocket();
+            throw toIOException(e);
+        }
+    }
+
+    @Override
+    public Map<String, String> getRunnerEnvironment(ServerSocketChannel server) {
+        return Collections.singletonMap(GAUGE_INTERNAL_SOCKET, path.toAbsolutePath().toString());
+    }
+
+    @Override
+    public void close(ServerSocketChannel server) throws IOException {
+        try {
+            server.close();
+        } finally {
+            deleteSocket();
+        }
+    }
+
+    /**
+     * Connect to the socket given by {@code GAUGE_INTERNAL_SOCKET}, for runners running in the bridge JVM
+     */
+    static SocketChannel connect(String socket) throws IOException {
+        try {
+            Method open = SocketChannel.class.getMethod("open", ProtocolFamily.class);
+            SocketChannel channel = (SocketChannel) open.invoke(null, getProtocolFamily());
+            try {
+                channel.connect(newAddress(Paths.get(socket)));
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            return channel;
+        } catch (IOException | RuntimeException | ReflectiveOperationException e) {
+            throw toIOException(e);
+        }
+    }
+
+    private void deleteSocket() throws IOException {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(path.getParent());
+    }
+
+    private static ProtocolFamily getProtocolFamily() {
+        return StandardProtocolFamily.valueOf("UNIX");
+    }
+
+    private static SocketAddress newAddress(Path path) throws ReflectiveOperationException {
+        return (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class)
+                .invoke(null, path);
+    }
+
+    private static IOException toIOException(Exception e) {
+        Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        return new IOException("Unix domain sockets need Java 16 or later, running on " + System.getProperty("java.version"), cause);
+    }
+}
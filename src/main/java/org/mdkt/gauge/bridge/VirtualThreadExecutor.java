@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs each task on a new virtual thread, so runner launchers blocked on their process and blocking socket I/O
+ * do not hold a platform thread each.
+ * <p>
+ * It needs a JDK 21+. The JDK API is looked up by reflection as the bridge is built for Java 8.
+ */
+public class VirtualThreadExecutor implements BridgeExecutor {
+    public static final String NAME = "virtual";
+    private final ThreadFactory factory;
+
+    public VirtualThreadExecutor() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            this.factory = (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            // on JDK 19 and 20 virtual threads are a preview feature
+            Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+            throw new RuntimeException("Virtual threads need Java 21 or later, running on " + System.getProperty("java.version"), cause);
+        }
+    }
+
+    @Override
+    public void execute(String name, Runnable task) {
+        Thread thread = factory.newThread(task);
+        thread.setName(name);
+        thread.start();
+    }
+
+    @Override
+    public void shutdown() {
+        // virtual threads are not pooled
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import com.google.protobuf.CodedOutputStream;
+import gauge.messages.Messages;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An append-only log of the messages exchanged with a runner, written through a memory-mapped file.
+ * <p>
+ * The file starts with a header: magic, version and the wall clock time the journal was opened at.
+ * Each record is the message size plus one, the nanoseconds since the journal was opened, the direction, the messageId
+ * and the serialized message. The size is offset as a message can serialize to 0 bytes, a 0 ends the journal since
+ * the mapped region past the last record is zeroed.
+ */
+public class WireJournal implements Closeable {
+    public static final String SUFFIX = ".journal";
+    private static final int MAGIC = 0x474a524e;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 8;
+    private static final int RECORD_HEADER_SIZE = 4 + 8 + 1 + 8;
+    private static final int REGION_SIZE = 4 * 1024 * 1024;
+    private final File file;
+    private final FileChannel channel;
+    private final long startNanos;
+    private MappedByteBuffer buffer;
+    private long bufferOffset;
+
+    private WireJournal(File file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Create the journal, replacing any previous one
+     */
+    public static WireJournal create(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        WireJournal journal = new WireJournal(file, FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        journal.map(0, HEADER_SIZE);
+        journal.buffer.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis());
+        return journal;
+    }
+
+    public synchronized void append(BridgeMetrics.Direction direction, Messages.Message msg) throws IOException {
+        if (buffer == null) {
+            throw new IOException("journal " + file + " is closed");
+        }
+        int size = msg.getSerializedSize();
+        if (buffer.remaining() < RECORD_HEADER_SIZE + size) {
+            map(bufferOffset + buffer.position(), RECORD_HEADER_SIZE + size);
+        }
+        buffer.putInt(size + 1)
+                .putLong(System.nanoTime() - startNanos)
+                .put((byte) direction.ordinal())
+                .putLong(msg.getMessageId());
+        CodedOutputStream cos = CodedOutputStream.newInstance(buffer);
+        msg.writeTo(cos);
+        cos.flush();
+    }
+
+    private void map(long offset, int required) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, offset, Math.max(REGION_SIZE, required));
+        bufferOffset = offset;
+    }
+
+    /**
+     * Cut the file after the last record
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        long size = bufferOffset + buffer.position();
+        buffer.force();
+        buffer = null;
+        try {
+            channel.truncate(size);
+        } finally {
+            channel.close();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return all records of the journal, in the order they were appended
+     */
+    public static List<Record> read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (data.remaining() < HEADER_SIZE || data.getInt() != MAGIC) {
+                throw new IOException(file + " is not a journal");
+            }
+            int version = data.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has the unsupported version " + version);
+            }
+            long startMillis = data.getLong();
+            BridgeMetrics.Direction[] directions = BridgeMetrics.Direction.values();
+            List<Record> records = new ArrayList<>();
+            while (data.remaining() >= RECORD_HEADER_SIZE) {
+                int size = data.getInt() - 1;
+                if (size < 0 || data.remaining() < RECORD_HEADER_SIZE - 4 + size) {
+                    break;
+                }
+                long timestamp = data.getLong();
+                BridgeMetrics.Direction direction = directions[data.get()];
+                long messageId = data.getLong();
+                ByteBuffer message = data.slice();
+                message.limit(size);
+                data.position(data.position() + size);
+                records.add(new Record(startMillis, timestamp, direction, messageId, Messages.Message.parseFrom(message)));
+            }
+            return records;
+        }
+    }
+
+    public static class Record {
+        private final long startMillis;
+        private final long timestampNanos;
+        private final BridgeMetrics.Direction direction;
+        private final long messageId;
+        private final Messages.Message message;
+
+        Record(long startMillis, long timestampNanos, BridgeMetrics.Direction direction, long messageId, Messages.Message message) {
+            this.startMillis = startMillis;
+            this.timestampNanos = timestampNanos;
+            this.direction = direction;
+            this.messageId = messageId;
+            this.message = message;
+        }
+
+        /**
+         * @return wall clock time the journal was opened at
+         */
+        public long getStartMillis() {
+            return startMillis;
+        }
+
+        /**
+         * @return nanoseconds between the opening of the journal and this record
+         */
+        public long getTimestampNanos() {
+            return timestampNanos;
+        }
+
+        public BridgeMetrics.Direction getDirection() {
+            return direction;
+        }
+
+        public long getMessageId() {
+            return messageId;
+        }
+
+        public Messages.Message getMessage() {
+            return message;
+        }
+    }
+}
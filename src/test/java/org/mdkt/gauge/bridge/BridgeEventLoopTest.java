@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import gauge.messages.Messages;
+import gauge.messages.Spec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BridgeEventLoopTest {
+    private BridgeEventLoop eventLoop;
+    private BridgeMetrics metrics;
+
+    @Before
+    public void setUp() {
+        eventLoop = new BridgeEventLoop();
+        metrics = new BridgeMetrics(new SimpleMeterRegistry());
+        eventLoop.start();
+    }
+
+    @After
+    public void tearDown() {
+        eventLoop.stop();
+    }
+
+    @Test
+    public void correlatesResponsesOfConcurrentRequests() throws Exception {
+        RunnerChannel channel = connectEchoPeer();
+        List<CompletableFuture<Messages.Message>> responses = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            responses.add(channel.send(newRequest(i)));
+        }
+
+        for (int i = 1; i <= 1000; i++) {
+            Messages.Message response = responses.get(i - 1).get(10, TimeUnit.SECONDS);
+            assertThat(response.getMessageId()).isEqualTo(i);
+            assertThat(response.getExecutionStatusResponse().getExecutionResult().getErrorMessage()).isEqualTo("step " + i);
+        }
+        assertThat(channel.getInFlightCount()).isZero();
+        assertThat(metrics.getRegistry().find("gauge.bridge.request").timer().count()).isEqualTo(1000);
+    }
+
+    @Test
+    public void failsPendingRequestsWhenRunnerDisconnects() throws Exception {
+        ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(0));
+        CompletableFuture<RunnerChannel> connected = eventLoop.accept(server,
+                socketChannel -> new RunnerChannel(LanguageRunner.python, 0, socketChannel, eventLoop, metrics));
+        Socket peer = new Socket("127.0.0.1", server.socket().getLocalPort());
+        RunnerChannel channel = connected.get(10, TimeUnit.SECONDS);
+
+        CompletableFuture<Messages.Message> response = channel.send(newRequest(1));
+        peer.close();
+
+        assertThatThrownBy(() -> response.get(10, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+    }
+
+    @Test
+    public void breaksRunnerWhichMissesDeadline() throws Exception {
+        System.setProperty("gauge_bridge_request_timeout", "1");
+        try {
+            ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(0));
+            CompletableFuture<RunnerChannel> connected = eventLoop.accept(server,
+                    socketChannel -> new RunnerChannel(LanguageRunner.python, 0, socketChannel, eventLoop, metrics));
+            Socket peer = new Socket("127.0.0.1", server.socket().getLocalPort());
+            RunnerChannel channel = connected.get(10, TimeUnit.SECONDS);
+            CompletableFuture<Throwable> broken = new CompletableFuture<>();
+            channel.setBrokenHandler(broken::complete);
+
+            CompletableFuture<Messages.Message> response = channel.send(newRequest(1));
+
+            assertThatThrownBy(() -> response.get(10, TimeUnit.SECONDS)).hasCauseInstanceOf(TimeoutException.class);
+            assertThat(broken.get(10, TimeUnit.SECONDS)).isInstanceOf(TimeoutException.class);
+            assertThat(channel.isBroken()).isTrue();
+            peer.close();
+        } finally {
+            System.clearProperty("gauge_bridge_request_timeout");
+        }
+    }
+
+    @Test
+    public void checksIdleRunnersWithAStepNameRequest() throws Exception {
+        ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(0));
+        CompletableFuture<RunnerChannel> connected = eventLoop.accept(server,
+                socketChannel -> new RunnerChannel(LanguageRunner.python, 0, socketChannel, eventLoop, metrics));
+        try (Socket peer = new Socket("127.0.0.1", server.socket().getLocalPort())) {
+            RunnerChannel channel = connected.get(10, TimeUnit.SECONDS);
+
+            channel.checkTimeouts(System.nanoTime() + TimeUnit.MINUTES.toNanos(1));
+
+            FrameCodec codec = new FrameCodec();
+            Messages.Message heartbeat;
+            while ((heartbeat = codec.decode()) == null) {
+                assertThat(codec.readFrom(peer.getInputStream())).isNotNegative();
+            }
+            assertThat(heartbeat.getMessageType()).isEqualTo(Messages.Message.MessageType.StepNameRequest);
+            assertThat(heartbeat.getMessageId()).isNegative();
+        }
+    }
+
+    @Test
+    public void keepsServingOtherRunnersWhenOneFails() throws Exception {
+        RunnerChannel faulty = connectEchoPeer(socketChannel -> new RunnerChannel(LanguageRunner.python, 0, socketChannel, eventLoop, metrics) {
+            @Override
+            void onReceived(ByteBuffer data) {
+                throw new IllegalStateException("decoding error");
+            }
+        });
+        RunnerChannel healthy = connectEchoPeer();
+
+        CompletableFuture<Messages.Message> failed = faulty.send(newRequest(1));
+
+        assertThatThrownBy(() -> failed.get(10, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(faulty.isBroken()).isTrue();
+        assertThat(healthy.send(newRequest(2)).get(10, TimeUnit.SECONDS).getMessageId()).isEqualTo(2);
+    }
+
+    @Test
+    public void failsPendingRequestsWhenStopped() throws Exception {
+        ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(0));
+        CompletableFuture<RunnerChannel> connected = eventLoop.accept(server,
+                socketChannel -> new RunnerChannel(LanguageRunner.python, 0, socketChannel, eventLoop, metrics));
+        try (Socket peer = new Socket("127.0.0.1", server.socket().getLocalPort())) {
+            RunnerChannel channel = connected.get(10, TimeUnit.SECONDS);
+            CompletableFuture<Messages.Message> response = channel.send(newRequest(1));
+
+            eventLoop.stop();
+
+            assertThatThrownBy(() -> response.get(10, TimeUnit.SECONDS)).hasCauseInstanceOf(IOException.class);
+            assertThat(channel.getSocketChannel().isOpen()).isFalse();
+        }
+    }
+
+    private RunnerChannel connectEchoPeer() throws Exception {
+        return connectEchoPeer(socketChannel -> new RunnerChannel(LanguageRunner.python, 0, socketChannel, eventLoop, metrics));
+    }
+
+    private RunnerChannel connectEchoPeer(Function<SocketChannel, RunnerChannel> channelFactory) throws Exception {
+        ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(0));
+        CompletableFuture<RunnerChannel> connected = eventLoop.accept(server, channelFactory);
+        Socket peer = new Socket("127.0.0.1", server.socket().getLocalPort());
+        Thread echo = new Thread(() -> echo(peer), "echo-peer");
+        echo.setDaemon(true);
+        echo.start();
+        return connected.get(10, TimeUnit.SECONDS);
+    }
+
+    private static void echo(Socket peer) {
+        FrameCodec codec = new FrameCodec();
+        try (Socket socket = peer) {
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            while (codec.readFrom(in) >= 0) {
+                Messages.Message request;
+                while ((request = codec.decode()) != null) {
+                    ByteBuffer data = codec.encode(Messages.Message.newBuilder()
+                            .setMessageId(request.getMessageId())
+                            .setMessageType(Messages.Message.MessageType.ExecutionStatusResponse)
+                            .setExecutionStatusResponse(Messages.ExecutionStatusResponse.newBuilder()
+                                    .setExecutionResult(Spec.ProtoExecutionResult.newBuilder()
+                                            .setErrorMessage(request.getExecuteStepRequest().getActualStepText())
+                                            .build())
+                                    .build())
+                            .build());
+                    out.write(data.array(), data.arrayOffset(), data.limit());
+                }
+                out.flush();
+            }
+        } catch (IOException ignored) {
+            // the bridge side closed the connection
+        }
+    }
+
+    private static Messages.Message newRequest(long id) {
+        return Messages.Message.newBuilder()
+                .setMessageId(id)
+                .setMessageType(Messages.Message.MessageType.ExecuteStep)
+                .setExecuteStepRequest(Messages.ExecuteStepRequest.newBuilder()
+                        .setActualStepText("step " + id)
+                        .build())
+                .build();
+    }
+}
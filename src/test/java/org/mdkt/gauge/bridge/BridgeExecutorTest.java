@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BridgeExecutorTest {
+
+    @Test
+    public void runsTasksOnNamedDaemonThreads() throws Exception {
+        BridgeExecutor executor = new PlatformThreadExecutor();
+        try {
+            CompletableFuture<String> first = new CompletableFuture<>();
+            executor.execute("language-runner-python-0", () -> first.complete(Thread.currentThread().getName()
+                    + (Thread.currentThread().isDaemon() ? " daemon" : "")));
+            assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("language-runner-python-0 daemon");
+
+            CompletableFuture<String> second = new CompletableFuture<>();
+            executor.execute("restart-python-0", () -> second.complete(Thread.currentThread().getName()));
+            assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("restart-python-0");
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import com.thoughtworks.gauge.StepValue;
+import gauge.messages.Messages;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FakeRunnerTest {
+
+    @Test
+    public void parsesStepParameters() {
+        StepValue sv = FakeRunner.parseStepValue("Python step with multiple arguments <s> and <i>");
+
+        assertThat(sv.getStepText()).isEqualTo("Python step with multiple arguments {} and {}");
+        assertThat(sv.getStepAnnotationText()).isEqualTo("Python step with multiple arguments <s> and <i>");
+        assertThat(sv.getParameters()).containsExactly("s", "i");
+    }
+
+    @Test
+    public void answersExecuteStepWithPayloadAndFailure() {
+        FakeRunner runner = new FakeRunner(0, 16, 1);
+
+        Messages.Message response = runner.respond(Messages.Message.newBuilder()
+                .setMessageId(7)
+                .setMessageType(Messages.Message.MessageType.ExecuteStep)
+                .setExecuteStepRequest(Messages.ExecuteStepRequest.newBuilder().setActualStepText("step"))
+                .build());
+
+        assertThat(response.getMessageId()).isEqualTo(7);
+        assertThat(response.getExecutionStatusResponse().getExecutionResult().getFailed()).isTrue();
+        assertThat(response.getExecutionStatusResponse().getExecutionResult().getMessage(0)).hasSize(16);
+    }
+
+    @Test
+    public void failsHooksAndValidationsAtTheirOwnRate() {
+        FakeRunner runner = new FakeRunner(FakeRunner.Behavior.NONE, 0, new FakeRunner.Behavior(0, 1), new FakeRunner.Behavior(0, 1));
+
+        Messages.Message preHook = runner.respond(Messages.Message.newBuilder()
+                .setMessageId(1)
+                .setMessageType(Messages.Message.MessageType.StepExecutionStarting)
+                .build());
+        Messages.Message step = runner.respond(Messages.Message.newBuilder()
+                .setMessageId(2)
+                .setMessageType(Messages.Message.MessageType.ExecuteStep)
+                .build());
+        Messages.Message validation = runner.respond(Messages.Message.newBuilder()
+                .setMessageId(3)
+                .setMessageType(Messages.Message.MessageType.StepValidateRequest)
+                .build());
+
+        assertThat(preHook.getExecutionStatusResponse().getExecutionResult().getFailed()).isTrue();
+        assertThat(step.getExecutionStatusResponse().getExecutionResult().getFailed()).isFalse();
+        assertThat(validation.getStepValidateResponse().getIsValid()).isFalse();
+    }
+
+    @Test
+    public void validatesAllSteps() {
+        Messages.Message response = new FakeRunner(0, 0, 0).respond(Messages.Message.newBuilder()
+                .setMessageId(1)
+                .setMessageType(Messages.Message.MessageType.StepValidateRequest)
+                .build());
+
+        assertThat(response.getMessageType()).isEqualTo(Messages.Message.MessageType.StepValidateResponse);
+        assertThat(response.getStepValidateResponse().getIsValid()).isTrue();
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import com.google.protobuf.ByteString;
+import gauge.messages.Messages;
+import gauge.messages.Spec;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FrameCodecTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void decodesFrameSplitAcrossReads() throws IOException {
+        Messages.Message msg = newMessage(1, "a step");
+        byte[] frame = toBytes(new FrameCodec().encode(msg));
+
+        FrameCodec codec = new FrameCodec();
+        for (int i = 0; i < frame.length - 1; i++) {
+            codec.feed(frame, i, 1);
+            assertThat(codec.decode()).isNull();
+        }
+        codec.feed(frame, frame.length - 1, 1);
+
+        assertThat(codec.decode()).isEqualTo(msg);
+        assertThat(codec.decode()).isNull();
+        assertThat(codec.buffered()).isZero();
+    }
+
+    @Test
+    public void decodesSeveralFramesFromOneRead() throws IOException {
+        List<Messages.Message> msgs = Arrays.asList(newMessage(1, "first"), newMessage(2, "second"), newMessage(3, "third"));
+        byte[] frames = toBytes(new FrameCodec().encode(msgs));
+
+        FrameCodec codec = new FrameCodec();
+        codec.feed(ByteBuffer.wrap(frames));
+
+        assertThat(decodeAll(codec)).containsExactlyElementsOf(msgs);
+        assertThat(codec.buffered()).isZero();
+    }
+
+    @Test
+    public void keepsTrailingPartialFrameForNextRead() throws IOException {
+        List<Messages.Message> msgs = Arrays.asList(newMessage(1, "first"), newMessage(2, "second"));
+        byte[] frames = toBytes(new FrameCodec().encode(msgs));
+        int split = frames.length - 3;
+
+        FrameCodec codec = new FrameCodec();
+        codec.feed(frames, 0, split);
+        assertThat(decodeAll(codec)).containsExactly(msgs.get(0));
+        assertThat(codec.buffered()).isGreaterThan(0);
+
+        codec.feed(frames, split, frames.length - split);
+        assertThat(decodeAll(codec)).containsExactly(msgs.get(1));
+    }
+
+    @Test
+    public void decodesFramesLargerThanTheInitialBuffer() throws IOException {
+        char[] text = new char[100 * 1024];
+        Arrays.fill(text, 'x');
+        Messages.Message large = newMessage(1, new String(text));
+        Messages.Message small = newMessage(2, "small");
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        large.writeDelimitedTo(stream);
+        small.writeDelimitedTo(stream);
+
+        FrameCodec codec = new FrameCodec();
+        ByteArrayInputStream in = new ByteArrayInputStream(stream.toByteArray());
+        List<Messages.Message> decoded = new ArrayList<>();
+        while (codec.readFrom(in) >= 0) {
+            decoded.addAll(decodeAll(codec));
+        }
+
+        assertThat(decoded).containsExactly(large, small);
+    }
+
+    @Test
+    public void spillsFramesLargerThanTheThreshold() throws IOException {
+        char[] text = new char[100 * 1024];
+        Arrays.fill(text, 'x');
+        Messages.Message large = newMessage(1, new String(text));
+        Messages.Message small = newMessage(2, "small");
+        byte[] frames = toBytes(new FrameCodec().encode(Arrays.asList(large, small)));
+        File spillDir = temporaryFolder.newFolder();
+
+        FrameCodec codec = new FrameCodec(1024, spillDir);
+        List<Messages.Message> decoded = new ArrayList<>();
+        for (int offset = 0; offset < frames.length; offset += 4096) {
+            codec.feed(frames, offset, Math.min(4096, frames.length - offset));
+            decoded.addAll(decodeAll(codec));
+            assertThat(codec.buffered()).isLessThanOrEqualTo(4096);
+        }
+
+        assertThat(decoded).containsExactly(large, small);
+        assertThat(spillDir.list()).isEmpty();
+    }
+
+    @Test
+    public void passesTheMessagesAndScreenshotsOfASpilledFrameByReference() throws IOException {
+        char[] text = new char[100 * 1024];
+        Arrays.fill(text, 'x');
+        byte[] screenshot = new byte[100 * 1024];
+        Arrays.fill(screenshot, (byte) 1);
+        Messages.Message status = Messages.Message.newBuilder()
+                .setMessageId(1)
+                .setMessageType(Messages.Message.MessageType.ExecutionStatusResponse)
+                .setExecutionStatusResponse(Messages.ExecutionStatusResponse.newBuilder()
+                        .setExecutionResult(Spec.ProtoExecutionResult.newBuilder()
+                                .setFailed(true)
+                                .setErrorMessage("failed")
+                                .setExecutionTime(42)
+                                .addMessage("small")
+                                .addMessage(new String(text))
+                                .addScreenshots(ByteString.copyFrom(screenshot))
+                                .build())
+                        .build())
+                .build();
+        byte[] frame = toBytes(new FrameCodec().encode(status));
+        File spillDir = temporaryFolder.newFolder();
+
+        FrameCodec codec = new FrameCodec(1024, spillDir);
+        codec.feed(frame, 0, 4096);
+        assertThat(codec.decode()).isNull();
+        codec.feed(frame, 4096, frame.length - 4096);
+        Messages.Message decoded = codec.decode();
+
+        Spec.ProtoExecutionResult result = decoded.getExecutionStatusResponse().getExecutionResult();
+        // checked before the comparison which decodes the messages to strings
+        assertThat(result.getMessageList().asByteStringList().get(1).asReadOnlyByteBuffer().isDirect()).isTrue();
+        assertThat(result.getScreenshots(0).asReadOnlyByteBuffer().isDirect()).isTrue();
+        assertThat(decoded).isEqualTo(status);
+        assertThat(spillDir.list()).isEmpty();
+    }
+
+    @Test
+    public void deletesTheFrameBeingSpilledWhenClosed() throws IOException {
+        char[] text = new char[100 * 1024];
+        Arrays.fill(text, 'x');
+        byte[] frame = toBytes(new FrameCodec().encode(newMessage(1, new String(text))));
+        File spillDir = temporaryFolder.newFolder();
+        FrameCodec codec = new FrameCodec(1024, spillDir);
+
+        codec.feed(frame, 0, frame.length / 2);
+        assertThat(codec.decode()).isNull();
+        assertThat(spillDir.list()).hasSize(1);
+        codec.close();
+
+        assertThat(spillDir.list()).isEmpty();
+        assertThatThrownBy(() -> {
+            codec.feed(frame, frame.length / 2, frame.length - frame.length / 2);
+            codec.decode();
+        }).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void reusesWriteBufferAcrossEncodes() throws IOException {
+        FrameCodec codec = new FrameCodec();
+        ByteBuffer first = codec.encode(newMessage(1, "first"));
+        ByteBuffer second = codec.encode(newMessage(2, "second"));
+
+        assertThat(second).isSameAs(first);
+    }
+
+    @Test
+    public void rejectsMalformedLength() {
+        byte[] bytes = new byte[11];
+        Arrays.fill(bytes, (byte) 0xFF);
+        FrameCodec codec = new FrameCodec();
+        codec.feed(bytes, 0, bytes.length);
+
+        assertThatThrownBy(codec::decode).isInstanceOf(IOException.class);
+    }
+
+    private static Messages.Message newMessage(long id, String stepText) {
+        return Messages.Message.newBuilder()
+                .setMessageId(id)
+                .setMessageType(Messages.Message.MessageType.ExecuteStep)
+                .setExecuteStepRequest(Messages.ExecuteStepRequest.newBuilder()
+                        .setActualStepText(stepText)
+                        .setParsedStepText(stepText)
+                        .build())
+                .build();
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static List<Messages.Message> decodeAll(FrameCodec codec) throws IOException {
+        List<Messages.Message> msgs = new ArrayList<>();
+        Messages.Message msg;
+        while ((msg = codec.decode()) != null) {
+            msgs.add(msg);
+        }
+        return msgs;
+    }
+}
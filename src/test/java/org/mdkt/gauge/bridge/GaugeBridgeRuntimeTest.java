@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import gauge.messages.Messages;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class GaugeBridgeRuntimeTest {
+    private BridgeEventLoop eventLoop;
+    private BridgeMetrics metrics;
+
+    @Before
+    public void setUp() {
+        eventLoop = new BridgeEventLoop();
+        metrics = new BridgeMetrics(new SimpleMeterRegistry());
+        eventLoop.start();
+        System.setProperty("gauge_bridge_pool_size", "2");
+        // a simulated runner has no plugin version to look up
+        System.setProperty("gauge_bridge_fake_runner", "true");
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("gauge_bridge_pool_size");
+        System.clearProperty("gauge_bridge_fake_runner");
+        eventLoop.stop();
+    }
+
+    @Test
+    public void stopsLaunchedRunnersWhenOneFailsToStart() {
+        List<RunnerChannel> launched = new CopyOnWriteArrayList<>();
+        GaugeBridgeRuntime runtime = new GaugeBridgeRuntime(metrics) {
+            @Override
+            CompletableFuture<RunnerChannel> launchRunner(LanguageRunner lr, int index) {
+                if (index == 1) {
+                    CompletableFuture<RunnerChannel> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(new IOException("runner process exited with code 1"));
+                    return failed;
+                }
+                return launchFakeRunner(lr, index).thenApply(channel -> {
+                    launched.add(channel);
+                    return channel;
+                });
+            }
+        };
+
+        assertThatThrownBy(() -> runtime.startLanguageRunner(LanguageRunner.python, Collections.emptyList(), Collections.emptyList()))
+                .hasMessageContaining("runner failed to start");
+
+        assertThat(launched).hasSize(1);
+        assertThat(launched.get(0).isClosing()).isTrue();
+        assertThat(launched.get(0).getSocketChannel().isOpen()).isFalse();
+    }
+
+    @Test
+    public void namesTheStepMissingFromTheRegistry() throws Exception {
+        GaugeBridgeRuntime runtime = new GaugeBridgeRuntime(metrics) {
+            @Override
+            CompletableFuture<RunnerChannel> launchRunner(LanguageRunner lr, int index) {
+                return launchFakeRunner(lr, index);
+            }
+        };
+        runtime.startLanguageRunner(LanguageRunner.python, Collections.emptyList(), Collections.emptyList());
+        try {
+            Method method = getClass().getMethod("namesTheStepMissingFromTheRegistry");
+
+            assertThatThrownBy(() -> runtime.getDispatchPlan(method, LanguageRunner.python, "Step missing from the index"))
+                    .hasMessageContaining("\"Step missing from the index\"")
+                    .hasMessageContaining("GaugeBridgeRuntimeTest.namesTheStepMissingFromTheRegistry");
+        } finally {
+            runtime.finish();
+        }
+    }
+
+    @Test
+    public void replacesABrokenRunnerWithTheSpare() throws Exception {
+        System.setProperty("gauge_bridge_spare_runner", "true");
+        GaugeBridgeRuntime runtime = new GaugeBridgeRuntime(metrics) {
+            @Override
+            CompletableFuture<RunnerChannel> launchRunner(LanguageRunner lr, int index) {
+                return launchFakeRunner(lr, index);
+            }
+        };
+        try {
+            runtime.startLanguageRunner(LanguageRunner.python, Collections.singletonList("Python simple step"), Collections.emptyList());
+            RunnerPool pool = runtime.getPool(LanguageRunner.python);
+            RunnerChannel spare = await(pool::getSpare);
+            RunnerChannel broken = pool.getChannels().get(0);
+
+            // the fake runner closes its connection once killed
+            broken.send(Messages.Message.newBuilder()
+                    .setMessageType(Messages.Message.MessageType.KillProcessRequest)
+                    .setKillProcessRequest(Messages.KillProcessRequest.newBuilder())
+                    .build());
+
+            await(() -> pool.getChannels().contains(spare) ? spare : null);
+            assertThat(pool.getChannels()).hasSize(2).doesNotContain(broken);
+            RunnerChannel nextSpare = await(() -> pool.getSpare() != spare ? pool.getSpare() : null);
+            assertThat(nextSpare.getIndex()).isEqualTo(broken.getIndex());
+        } finally {
+            System.clearProperty("gauge_bridge_spare_runner");
+            runtime.finish();
+        }
+    }
+
+    @Test
+    public void failsEveryMessageWhenNoRunnerCanBeLeased() throws Exception {
+        System.setProperty("gauge_bridge_lease_timeout", "0");
+        GaugeBridgeRuntime runtime = new GaugeBridgeRuntime(metrics) {
+            @Override
+            CompletableFuture<RunnerChannel> launchRunner(LanguageRunner lr, int index) {
+                return launchFakeRunner(lr, index);
+            }
+        };
+        try {
+            runtime.startLanguageRunner(LanguageRunner.python, Collections.emptyList(), Collections.emptyList());
+            RunnerPool pool = runtime.getPool(LanguageRunner.python);
+            RunnerPoolTest.leaseOnNewThread(pool);
+            RunnerPoolTest.leaseOnNewThread(pool);
+            Messages.Message msg = Messages.Message.newBuilder()
+                    .setMessageType(Messages.Message.MessageType.StepExecutionStarting)
+                    .build();
+
+            List<CompletableFuture<Messages.Message>> responses = runtime.executeAllAsync(LanguageRunner.python, Arrays.asList(msg, msg));
+
+            assertThat(responses).hasSize(2).allMatch(CompletableFuture::isCompletedExceptionally);
+            assertThatThrownBy(() -> responses.get(0).join()).hasMessageContaining("no idle runner");
+        } finally {
+            System.clearProperty("gauge_bridge_lease_timeout");
+            runtime.finish();
+        }
+    }
+
+    private static <T> T await(Supplier<T> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        T value;
+        while ((value = condition.get()) == null) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+        return value;
+    }
+
+    private CompletableFuture<RunnerChannel> launchFakeRunner(LanguageRunner lr, int index) {
+        return launchFakeRunner(eventLoop, metrics, new FakeRunner(0, 0, 0), lr, index);
+    }
+
+    /**
+     * Connect a fake runner running on its own thread, the way {@link GaugeBridgeRuntime#launchRunner} connects a runner
+     */
+    static CompletableFuture<RunnerChannel> launchFakeRunner(BridgeEventLoop eventLoop, BridgeMetrics metrics,
+                                                            FakeRunner fakeRunner, LanguageRunner lr, int index) {
+        try {
+            ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            CompletableFuture<RunnerChannel> connected = eventLoop.accept(server,
+                    socketChannel -> new RunnerChannel(lr, index, socketChannel, eventLoop, metrics));
+            Map<String, String> runnerEnvironment = Collections.singletonMap(TcpTransport.GAUGE_INTERNAL_PORT,
+                    String.valueOf(server.socket().getLocalPort()));
+            Thread runner = new Thread(() -> fakeRunner.run(runnerEnvironment), "fake-runner-" + index);
+            runner.setDaemon(true);
+            runner.start();
+            return connected;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
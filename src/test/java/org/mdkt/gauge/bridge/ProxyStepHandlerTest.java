@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import com.google.protobuf.ByteString;
+import com.thoughtworks.gauge.Step;
+import gauge.messages.Messages;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mdkt.gauge.SpecPython;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ProxyStepHandlerTest {
+    private final List<Messages.Message.MessageType> received = new CopyOnWriteArrayList<>();
+    private BridgeEventLoop eventLoop;
+    private BridgeMetrics metrics;
+    private GaugeBridgeRuntime runtime;
+
+    @Before
+    public void setUp() {
+        eventLoop = new BridgeEventLoop();
+        metrics = new BridgeMetrics(new SimpleMeterRegistry());
+        eventLoop.start();
+        // a simulated runner has no plugin version to look up
+        System.setProperty("gauge_bridge_fake_runner", "true");
+        System.setProperty("gauge_bridge_step_pipelining", "true");
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("gauge_bridge_fake_runner");
+        System.clearProperty("gauge_bridge_step_pipelining");
+        if (runtime != null) {
+            runtime.finish();
+        }
+        eventLoop.stop();
+    }
+
+    @Test
+    public void pipelinesTheStepWithItsPosthook() throws Exception {
+        ProxyStepHandler handler = startHandler(FakeRunner.Behavior.NONE);
+        Method method = SpecPython.class.getMethod("pythonSimpleStep");
+
+        handler.executeStep(method, method.getAnnotation(ProxyStep.class), method.getAnnotation(Step.class), new Object[0]);
+
+        assertThat(received).endsWith(Messages.Message.MessageType.StepExecutionStarting,
+                Messages.Message.MessageType.ExecuteStep, Messages.Message.MessageType.StepExecutionEnding);
+    }
+
+    @Test
+    public void neverSendsAStepWhosePrehookFails() throws Exception {
+        ProxyStepHandler handler = startHandler(new FakeRunner.Behavior(0, 1));
+        Method method = SpecPython.class.getMethod("pythonSimpleStep");
+
+        assertThatThrownBy(() -> handler.executeStep(method, method.getAnnotation(ProxyStep.class),
+                method.getAnnotation(Step.class), new Object[0])).hasMessageContaining("Prehook failed");
+        // the runner answers in order so everything written for the step was received once this is answered
+        runtime.executeAndGetStatus(LanguageRunner.python, Messages.Message.newBuilder()
+                .setMessageId(runtime.nextMessageId())
+                .setMessageType(Messages.Message.MessageType.ScenarioExecutionEnding)
+                .build());
+
+        assertThat(received).endsWith(Messages.Message.MessageType.StepExecutionStarting,
+                Messages.Message.MessageType.ScenarioExecutionEnding);
+        assertThat(received).doesNotContain(Messages.Message.MessageType.ExecuteStep);
+    }
+
+    @Test
+    public void spillsTheSameContentToTheSameFile() {
+        ByteString screenshot = ByteString.copyFromUtf8("screenshot");
+        File first = new File(ProxyStepHandler.spill(LanguageRunner.python, screenshot, ".png"));
+        try {
+            // a memoized step replays the same screenshot
+            assertThat(ProxyStepHandler.spill(LanguageRunner.python, screenshot, ".png")).isEqualTo(first.getAbsolutePath());
+            assertThat(first).hasBinaryContent(screenshot.toByteArray());
+            assertThat(Common.getSpillDir().list((dir, name) -> name.endsWith(".tmp"))).isEmpty();
+        } finally {
+            first.delete();
+        }
+    }
+
+    private ProxyStepHandler startHandler(FakeRunner.Behavior hooks) throws Exception {
+        FakeRunner fakeRunner = new FakeRunner(FakeRunner.Behavior.NONE, 0, hooks, FakeRunner.Behavior.NONE) {
+            @Override
+            Messages.Message respond(Messages.Message request) {
+                received.add(request.getMessageType());
+                return super.respond(request);
+            }
+        };
+        runtime = new GaugeBridgeRuntime(metrics) {
+            @Override
+            CompletableFuture<RunnerChannel> launchRunner(LanguageRunner lr, int index) {
+                return GaugeBridgeRuntimeTest.launchFakeRunner(eventLoop, metrics, fakeRunner, lr, index);
+            }
+        };
+        runtime.startLanguageRunner(LanguageRunner.python, Collections.singletonList("Python simple step"),
+                Collections.singletonList(SpecPython.class.getMethod("pythonSimpleStep")));
+        ProxyStepHandler handler = new ProxyStepHandler();
+        handler.runtime = runtime;
+        handler.metrics = metrics;
+        return handler;
+    }
+}
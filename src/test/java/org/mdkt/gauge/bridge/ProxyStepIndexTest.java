@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mdkt.gauge.SpecPython;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProxyStepIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void loadsStepsIndexedAtCompileTime() throws Exception {
+        ProxyStepsScanner scanner = new ProxyStepsScanner();
+
+        assertThat(scanner.loadIndex(getClass().getClassLoader())).isTrue();
+
+        assertThat(scanner.getLanguageRunners()).containsExactly(LanguageRunner.python);
+        assertThat(scanner.getStepNames(LanguageRunner.python)).containsExactlyInAnyOrder(
+                "Python simple step",
+                "Python step with multiple arguments <s> and <i>",
+                "Python step to be <status>");
+        assertThat(scanner.getStepMethods(LanguageRunner.python))
+                .contains(SpecPython.class.getDeclaredMethod("pythonStepMultiple", String.class, int.class));
+    }
+
+    @Test
+    public void addsStepsOfClasspathEntriesWithoutIndex() throws Exception {
+        File classes = compile("Unindexed", "Unindexed step", "-proc:none");
+        ProxyStepsScanner scanner = new ProxyStepsScanner();
+
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{classes.toURI().toURL()}, getClass().getClassLoader())) {
+            assertThat(scanner.loadIndex(classLoader)).isTrue();
+        }
+
+        assertThat(scanner.getStepNames(LanguageRunner.python)).contains("Python simple step", "Unindexed step");
+    }
+
+    @Test
+    public void keepsIndexedClassesNotCompiledAgain() throws Exception {
+        File classes = folder.newFolder("classes");
+        File index = new File(classes, ProxyStepIndex.RESOURCE);
+        index.getParentFile().mkdirs();
+        String kept = ProxyStepIndex.toLine("python", SpecPython.class.getName(), "pythonSimpleStep",
+                new ArrayList<>(), Arrays.asList("Python simple step"));
+        Files.write(index.toPath(), Arrays.asList(
+                kept,
+                ProxyStepIndex.toLine("python", "gen.Incremental", "removed", new ArrayList<>(), Arrays.asList("Removed step")),
+                ProxyStepIndex.toLine("python", "gen.Deleted", "deleted", new ArrayList<>(), Arrays.asList("Deleted step"))),
+                StandardCharsets.UTF_8);
+
+        compile("Incremental", "Changed step", "-processor", ProxyStepIndexProcessor.class.getName());
+
+        List<String> lines = Files.readAllLines(index.toPath(), StandardCharsets.UTF_8);
+        assertThat(lines).containsExactly(kept,
+                ProxyStepIndex.toLine("python", "gen.Incremental", "step", new ArrayList<>(), Arrays.asList("Changed step")));
+    }
+
+    @Test
+    public void fallsBackToScanningWithoutIndex() {
+        ClassLoader empty = new ClassLoader(null) {
+        };
+
+        assertThat(new ProxyStepsScanner().loadIndex(empty)).isFalse();
+    }
+
+    /**
+     * Compile a class of package gen with one proxy step into the classes folder
+     */
+    private File compile(String className, String stepText, String... options) throws Exception {
+        File sources = new File(folder.getRoot(), "sources/gen");
+        sources.mkdirs();
+        File source = new File(sources, className + ".java");
+        Files.write(source.toPath(), Arrays.asList(
+                "package gen;",
+                "import com.thoughtworks.gauge.Step;",
+                "import org.mdkt.gauge.bridge.LanguageRunner;",
+                "import org.mdkt.gauge.bridge.ProxyStep;",
+                "public class " + className + " {",
+                "    @ProxyStep(LanguageRunner.python)",
+                "    @Step(\"" + stepText + "\")",
+                "    public void step() {",
+                "    }",
+                "}"), StandardCharsets.UTF_8);
+        File classes = new File(folder.getRoot(), "classes");
+        classes.mkdirs();
+        List<String> arguments = new ArrayList<>(Arrays.asList(options));
+        arguments.addAll(Arrays.asList("-classpath", System.getProperty("java.class.path"),
+                "-d", classes.getAbsolutePath(), source.getAbsolutePath()));
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertThat(compiler.run(null, null, null, arguments.toArray(new String[0]))).isZero();
+        return classes;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import com.thoughtworks.gauge.StepValue;
+import com.thoughtworks.gauge.Table;
+import gauge.messages.Messages;
+import gauge.messages.Spec;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProxyStepPlanTest {
+
+    @Test
+    public void bindsParametersIntoStepText() {
+        StepValue sv = new StepValue("Python step with multiple arguments {} and {}",
+                "Python step with multiple arguments <s> and <i>", Arrays.asList("s", "i"));
+        ProxyStepPlan plan = new ProxyStepPlan(null, LanguageRunner.python, sv);
+
+        Messages.ExecuteStepRequest request = plan.newExecuteStepRequest(new Object[]{"hello", 1});
+
+        assertThat(request.getActualStepText()).isEqualTo("Python step with multiple arguments \"hello\" and \"1\"");
+        assertThat(request.getParsedStepText()).isEqualTo("Python step with multiple arguments {} and {}");
+        assertThat(request.getParametersList()).extracting("value").containsExactly("hello", "1");
+    }
+
+    @Test
+    public void sendsTablesWithoutRenderingThemAndMultilineStringsAsText() {
+        StepValue sv = new StepValue("Python step with table {} and text {}",
+                "Python step with table <t> and text <s>", Arrays.asList("t", "s"));
+        ProxyStepPlan plan = new ProxyStepPlan(null, LanguageRunner.python, sv);
+        Table table = new Table(Arrays.asList("id", "name"));
+        table.addRow(Arrays.asList("1", "foo"));
+        table.addRow(Arrays.asList("2", "bar"));
+
+        Messages.ExecuteStepRequest request = plan.newExecuteStepRequest(new Object[]{table, "line 1\nline 2"});
+
+        assertThat(request.getActualStepText()).isEqualTo("Python step with table <table> and text \"line 1\nline 2\"");
+        Spec.Parameter tableParameter = request.getParameters(0);
+        assertThat(tableParameter.getParameterType()).isEqualTo(Spec.Parameter.ParameterType.Table);
+        assertThat(tableParameter.getTable().getHeaders().getCellsList()).containsExactly("id", "name");
+        assertThat(tableParameter.getTable().getRowsList()).extracting("cellsList")
+                .containsExactly(Arrays.asList("1", "foo"), Arrays.asList("2", "bar"));
+        Spec.Parameter textParameter = request.getParameters(1);
+        assertThat(textParameter.getParameterType()).isEqualTo(Spec.Parameter.ParameterType.Static);
+        assertThat(textParameter.getValue()).isEqualTo("line 1\nline 2");
+    }
+
+    @Test
+    public void keepsTextWithoutParameters() {
+        ProxyStepPlan plan = new ProxyStepPlan(null, LanguageRunner.python, new StepValue("Python simple step", "Python simple step"));
+
+        Messages.ExecuteStepRequest request = plan.newExecuteStepRequest(new Object[0]);
+
+        assertThat(request.getActualStepText()).isEqualTo("Python simple step");
+        assertThat(request.getParametersList()).isEmpty();
+    }
+
+    @Test
+    public void onlyMessageIdChangesBetweenPostStepMessages() {
+        ProxyStepPlan plan = new ProxyStepPlan(null, LanguageRunner.python, new StepValue("Python simple step", "Python simple step"));
+
+        Messages.Message first = plan.newPostStepMessage(1);
+        Messages.Message second = plan.newPostStepMessage(2);
+
+        assertThat(second.toBuilder().setMessageId(1).build()).isEqualTo(first);
+        assertThat(second.getMessageType()).isEqualTo(Messages.Message.MessageType.StepExecutionEnding);
+    }
+}
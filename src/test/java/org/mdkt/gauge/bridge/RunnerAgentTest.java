@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import gauge.messages.Messages;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RunnerAgentTest {
+    private final List<RunnerAgent> agents = new ArrayList<>();
+    private final List<CompletableFuture<Void>> stopped = new ArrayList<>();
+    private final List<RunnerChannel> channels = new ArrayList<>();
+    private BridgeEventLoop eventLoop;
+    private BridgeMetrics metrics;
+
+    @Before
+    public void setUp() {
+        eventLoop = new BridgeEventLoop();
+        metrics = new BridgeMetrics(new SimpleMeterRegistry());
+        eventLoop.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (RunnerChannel channel : channels) {
+            channel.close();
+        }
+        eventLoop.stop();
+        for (RunnerAgent agent : agents) {
+            agent.stop();
+        }
+        // the agents return once the bridges are disconnected
+        for (CompletableFuture<Void> agent : stopped) {
+            agent.get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void spreadsLeasesOverTheAgents() throws Exception {
+        InetSocketAddress first = startAgent(null);
+        InetSocketAddress second = startAgent(null);
+        RunnerPool pool = new RunnerPool(LanguageRunner.python);
+        int index = 0;
+        for (InetSocketAddress agent : new InetSocketAddress[]{first, first, second, second}) {
+            pool.add(connect(index++, agent));
+        }
+
+        Set<String> nodes = new HashSet<>();
+        for (int i = 0; i < 2; i++) {
+            RunnerChannel leased = RunnerPoolTest.leaseOnNewThread(pool);
+            nodes.add(leased.getNode());
+            Messages.Message response = leased.send(Messages.Message.newBuilder()
+                    .setMessageType(Messages.Message.MessageType.StepValidateRequest)
+                    .build()).get(5, TimeUnit.SECONDS);
+            assertThat(response.getStepValidateResponse().getIsValid()).isTrue();
+        }
+
+        assertThat(nodes).containsExactlyInAnyOrder(getNode(first), getNode(second));
+    }
+
+    @Test
+    public void rejectsBridgesWithoutTheToken() throws Exception {
+        InetSocketAddress agent = startAgent("secret");
+
+        assertThatThrownBy(() -> RunnerAgentClient.connect(LanguageRunner.python, 0, agent, 5))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("wrong token");
+    }
+
+    @Test
+    public void dropsBridgesWhichDoNotCompleteTheHandshake() throws Exception {
+        System.setProperty("gauge_bridge_startup_timeout", "1");
+        try {
+            InetSocketAddress agent = startAgent("secret");
+            try (Socket stalled = new Socket(agent.getHostString(), agent.getPort());
+                 Socket tooLong = new Socket(agent.getHostString(), agent.getPort())) {
+                stalled.setSoTimeout(5000);
+                tooLong.setSoTimeout(5000);
+                char[] line = new char[RunnerAgent.MAX_LINE_LENGTH + 1];
+                Arrays.fill(line, 'x');
+                tooLong.getOutputStream().write(new String(line).getBytes(StandardCharsets.UTF_8));
+
+                assertThat(stalled.getInputStream().read()).isEqualTo(-1);
+                assertThat(tooLong.getInputStream().read()).isEqualTo(-1);
+            }
+        } finally {
+            System.clearProperty("gauge_bridge_startup_timeout");
+        }
+    }
+
+    @Test
+    public void needsATokenToListenOnOtherAddresses() {
+        RunnerAgent agent = new RunnerAgent(new InetSocketAddress(0), null, new FakeRunner(0, 0, 0));
+
+        assertThatThrownBy(agent::run).hasMessageContaining("gauge_bridge_agent_token");
+    }
+
+    private InetSocketAddress startAgent(String token) throws Exception {
+        RunnerAgent agent = new RunnerAgent(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), token,
+                new FakeRunner(0, 0, 0));
+        agents.add(agent);
+        stopped.add(CompletableFuture.runAsync(() -> {
+            try {
+                agent.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (agent.getPort() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return InetSocketAddress.createUnresolved(InetAddress.getLoopbackAddress().getHostAddress(), agent.getPort());
+    }
+
+    private RunnerChannel connect(int index, InetSocketAddress agent) throws Exception {
+        SocketChannel socketChannel = RunnerAgentClient.connect(LanguageRunner.python, index, agent, 5);
+        RunnerChannel channel = eventLoop.register(socketChannel,
+                sc -> new RunnerChannel(LanguageRunner.python, index, sc, eventLoop, metrics)).get(5, TimeUnit.SECONDS);
+        channel.setNode(getNode(agent));
+        channels.add(channel);
+        return channel;
+    }
+
+    private static String getNode(InetSocketAddress agent) {
+        return agent.getHostString() + ":" + agent.getPort();
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import gauge.messages.Messages;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RunnerDaemonTest {
+    private static final int INDEX = 99;
+    private RunnerDaemon daemon;
+    private CompletableFuture<Void> stopped;
+
+    @Before
+    public void startDaemon() throws Exception {
+        // an executed step answers after 200 ms so its response arrives once its bridge is gone
+        daemon = new RunnerDaemon(LanguageRunner.python, INDEX, new FakeRunner(200_000, 0, 0));
+        stopped = CompletableFuture.runAsync(() -> {
+            try {
+                daemon.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        long deadline = System.currentTimeMillis() + 5000;
+        while (daemon.getPort() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(daemon.getPort()).isNotZero();
+    }
+
+    @After
+    public void stopDaemon() throws Exception {
+        try (SocketChannel bridge = connect()) {
+            send(bridge, Messages.Message.newBuilder()
+                    .setMessageId(1)
+                    .setMessageType(Messages.Message.MessageType.KillProcessRequest)
+                    .setKillProcessRequest(Messages.KillProcessRequest.newBuilder())
+                    .build());
+            stopped.get(10, TimeUnit.SECONDS);
+        }
+        assertThat(RunnerDaemonClient.getRegistrationFile(LanguageRunner.python, INDEX)).doesNotExist();
+    }
+
+    @Test
+    public void dropsResponsesToThePreviousBridge() throws Exception {
+        try (SocketChannel previous = connect()) {
+            send(previous, Messages.Message.newBuilder()
+                    .setMessageId(1)
+                    .setMessageType(Messages.Message.MessageType.ExecuteStep)
+                    .setExecuteStepRequest(Messages.ExecuteStepRequest.newBuilder().setActualStepText("step"))
+                    .build());
+        }
+        try (SocketChannel bridge = connect()) {
+            send(bridge, Messages.Message.newBuilder()
+                    .setMessageId(1)
+                    .setMessageType(Messages.Message.MessageType.StepValidateRequest)
+                    .build());
+
+            Messages.Message response = receive(bridge);
+
+            assertThat(response.getMessageId()).isEqualTo(1);
+            assertThat(response.getMessageType()).isEqualTo(Messages.Message.MessageType.StepValidateResponse);
+        }
+    }
+
+    @Test
+    public void rejectsASecondBridge() throws Exception {
+        try (SocketChannel bridge = connect()) {
+            assertThatThrownBy(() -> RunnerDaemonClient.open(LanguageRunner.python, INDEX, daemon.getPort()))
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("used by another bridge");
+
+            send(bridge, Messages.Message.newBuilder()
+                    .setMessageId(5)
+                    .setMessageType(Messages.Message.MessageType.StepNamesRequest)
+                    .build());
+            assertThat(receive(bridge).getMessageId()).isEqualTo(5);
+        }
+    }
+
+    /**
+     * The daemon notices a closed bridge asynchronously so the next bridge may be refused for a moment
+     */
+    private SocketChannel connect() throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            try {
+                return RunnerDaemonClient.open(LanguageRunner.python, INDEX, daemon.getPort());
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private static void send(SocketChannel bridge, Messages.Message msg) throws IOException {
+        ByteBuffer data = new FrameCodec().encode(msg);
+        OutputStream out = bridge.socket().getOutputStream();
+        out.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        out.flush();
+    }
+
+    private static Messages.Message receive(SocketChannel bridge) throws IOException {
+        FrameCodec codec = new FrameCodec();
+        InputStream in = bridge.socket().getInputStream();
+        Messages.Message msg;
+        while ((msg = codec.decode()) == null) {
+            if (codec.readFrom(in) < 0) {
+                throw new IOException("daemon closed the connection");
+            }
+        }
+        return msg;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RunnerPoolTest {
+
+    @Test
+    public void leasesRunnersOfTheLeastBusyNode() throws Exception {
+        BridgeMetrics metrics = new BridgeMetrics(new SimpleMeterRegistry());
+        RunnerPool pool = new RunnerPool(LanguageRunner.python);
+        pool.add(new RunnerChannel(LanguageRunner.python, 0, null, null, metrics));
+        pool.add(new RunnerChannel(LanguageRunner.python, 1, null, null, metrics));
+        RunnerChannel remote = new RunnerChannel(LanguageRunner.python, 2, null, null, metrics);
+        remote.setNode("agent-1:7000");
+        pool.add(remote);
+
+        assertThat(leaseOnNewThread(pool).getIndex()).isEqualTo(0);
+        assertThat(leaseOnNewThread(pool).getIndex()).isEqualTo(2);
+        assertThat(leaseOnNewThread(pool).getIndex()).isEqualTo(1);
+    }
+
+    @Test
+    public void keepsTheRunnerLeasedByAScenarioUntilItIsReleased() throws Exception {
+        RunnerPool pool = newPool(2);
+        ExecutorService scenario = Executors.newSingleThreadExecutor();
+        try {
+            RunnerChannel leased = scenario.submit(pool::lease).get(5, TimeUnit.SECONDS);
+
+            assertThat(scenario.submit(pool::lease).get(5, TimeUnit.SECONDS)).isSameAs(leased);
+            assertThat(leaseOnNewThread(pool)).isNotSameAs(leased);
+            scenario.submit(pool::release).get(5, TimeUnit.SECONDS);
+            assertThat(leaseOnNewThread(pool)).isSameAs(leased);
+        } finally {
+            scenario.shutdown();
+        }
+    }
+
+    @Test
+    public void waitsForARunnerReleasedByAnotherScenario() throws Exception {
+        RunnerPool pool = newPool(1);
+        ExecutorService scenario = Executors.newSingleThreadExecutor();
+        try {
+            RunnerChannel leased = scenario.submit(pool::lease).get(5, TimeUnit.SECONDS);
+            CompletableFuture<RunnerChannel> waiting = CompletableFuture.supplyAsync(pool::lease);
+            Thread.sleep(100);
+            assertThat(waiting).isNotDone();
+
+            scenario.submit(pool::release).get(5, TimeUnit.SECONDS);
+
+            assertThat(waiting.get(5, TimeUnit.SECONDS)).isSameAs(leased);
+        } finally {
+            scenario.shutdown();
+        }
+    }
+
+    @Test
+    public void failsWhenNoRunnerIsReleasedInTime() throws Exception {
+        System.setProperty("gauge_bridge_lease_timeout", "1");
+        try {
+            RunnerPool pool = newPool(1);
+            leaseOnNewThread(pool);
+
+            assertThatThrownBy(() -> CompletableFuture.supplyAsync(pool::lease).get(5, TimeUnit.SECONDS))
+                    .hasMessageContaining("no idle runner after 1 seconds");
+        } finally {
+            System.clearProperty("gauge_bridge_lease_timeout");
+        }
+    }
+
+    @Test
+    public void doesNotGiveBackABrokenRunner() throws Exception {
+        RunnerPool pool = newPool(2);
+        ExecutorService scenario = Executors.newSingleThreadExecutor();
+        try {
+            RunnerChannel broken = scenario.submit(pool::lease).get(5, TimeUnit.SECONDS);
+            assertThat(pool.remove(broken)).isTrue();
+
+            scenario.submit(pool::release).get(5, TimeUnit.SECONDS);
+
+            assertThat(pool.getChannels()).doesNotContain(broken);
+            RunnerChannel healthy = leaseOnNewThread(pool);
+            assertThat(healthy).isNotSameAs(broken);
+            assertThatThrownBy(() -> CompletableFuture.supplyAsync(pool::lease).get(200, TimeUnit.MILLISECONDS))
+                    .isInstanceOf(TimeoutException.class);
+        } finally {
+            scenario.shutdown();
+        }
+    }
+
+    @Test
+    public void keepsOneSpareOutOfThePool() {
+        BridgeMetrics metrics = new BridgeMetrics(new SimpleMeterRegistry());
+        RunnerPool pool = new RunnerPool(LanguageRunner.python);
+        RunnerChannel spare = new RunnerChannel(LanguageRunner.python, 1, null, null, metrics);
+
+        assertThat(pool.setSpare(spare)).isTrue();
+        assertThat(pool.setSpare(new RunnerChannel(LanguageRunner.python, 2, null, null, metrics))).isFalse();
+        assertThat(pool.getChannels()).isEmpty();
+        assertThat(pool.takeSpare()).isSameAs(spare);
+        assertThat(pool.takeSpare()).isNull();
+        assertThat(pool.removeSpare(spare)).isFalse();
+    }
+
+    private static RunnerPool newPool(int size) {
+        BridgeMetrics metrics = new BridgeMetrics(new SimpleMeterRegistry());
+        RunnerPool pool = new RunnerPool(LanguageRunner.python);
+        for (int i = 0; i < size; i++) {
+            pool.add(new RunnerChannel(LanguageRunner.python, i, null, null, metrics));
+        }
+        return pool;
+    }
+
+    /**
+     * A runner is leased by a scenario thread so each lease is made by its own thread
+     */
+    static RunnerChannel leaseOnNewThread(RunnerPool pool) throws Exception {
+        CompletableFuture<RunnerChannel> leased = new CompletableFuture<>();
+        new Thread(() -> {
+            try {
+                leased.complete(pool.lease());
+            } catch (RuntimeException e) {
+                leased.completeExceptionally(e);
+            }
+        }).start();
+        return leased.get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.ByteString;
+import gauge.messages.Spec;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StepResultCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void evictsLeastRecentlyUsedResults() {
+        StepResultCache cache = new StepResultCache(LanguageRunner.python, 2, null, null, null, clock::get);
+        cache.put(key("a"), result(1), memoized("suite"));
+        cache.put(key("b"), result(2), memoized("suite"));
+        cache.get(key("a"));
+
+        cache.put(key("c"), result(3), memoized("suite"));
+
+        assertThat(cache.get(key("a"))).isEqualTo(result(1));
+        assertThat(cache.get(key("b"))).isNull();
+        assertThat(cache.get(key("c"))).isEqualTo(result(3));
+    }
+
+    @Test
+    public void expiresResultsAfterTheirTtl() {
+        StepResultCache cache = new StepResultCache(LanguageRunner.python, 10, null, null, null, clock::get);
+        cache.put(key("a"), result(1), memoized("tenSeconds"));
+
+        clock.set(9999);
+        assertThat(cache.get(key("a"))).isEqualTo(result(1));
+        clock.set(10000);
+        assertThat(cache.get(key("a"))).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void savesOnlyPersistentResults() throws Exception {
+        File file = new File(folder.getRoot(), "python.json");
+        StepResultCache cache = new StepResultCache(LanguageRunner.python, 10, file, "1.0", "hash", clock::get);
+        cache.put(key("a"), result(1), memoized("suite"));
+        cache.put(key("b"), result(2), memoized("persistent"));
+
+        cache.save();
+
+        StepResultCache.CacheFile content = new ObjectMapper().readValue(file, StepResultCache.CacheFile.class);
+        assertThat(content.pluginVersion).isEqualTo("1.0");
+        assertThat(content.results).hasSize(1);
+        assertThat(ByteString.copyFrom(content.results.get(0).request)).isEqualTo(key("b"));
+        assertThat(Spec.ProtoExecutionResult.parseFrom(content.results.get(0).result)).isEqualTo(result(2));
+    }
+
+    private static ByteString key(String step) {
+        return ByteString.copyFromUtf8(step);
+    }
+
+    private static Spec.ProtoExecutionResult result(long executionTime) {
+        return Spec.ProtoExecutionResult.newBuilder().setExecutionTime(executionTime).build();
+    }
+
+    private static Memoized memoized(String method) {
+        try {
+            return StepResultCacheTest.class.getDeclaredMethod(method).getAnnotation(Memoized.class);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Memoized
+    void suite() {
+    }
+
+    @Memoized(ttl = 10)
+    void tenSeconds() {
+    }
+
+    @Memoized(persistent = true)
+    void persistent() {
+    }
+}
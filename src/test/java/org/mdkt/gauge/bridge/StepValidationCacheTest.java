@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import com.thoughtworks.gauge.StepValue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StepValidationCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void saveValidatedSteps() {
+        StepValidationCache cache = StepValidationCache.load(LanguageRunner.python, folder.getRoot(), "1.0", "hash");
+        cache.put("Step <a>", FakeRunner.parseStepValue("Step <a>"));
+        cache.put("Other step", FakeRunner.parseStepValue("Other step"));
+        cache.save(Arrays.asList("Step <a>", "Other step"));
+    }
+
+    @Test
+    public void reusesStepsOfTheSameRunnerVersionAndImplementation() {
+        StepValidationCache cache = StepValidationCache.load(LanguageRunner.python, folder.getRoot(), "1.0", "hash");
+
+        StepValue sv = cache.get("Step <a>");
+
+        assertThat(sv.getStepText()).isEqualTo("Step {}");
+        assertThat(sv.getParameters()).containsExactly("a");
+    }
+
+    @Test
+    public void missesStepsWhichLeftTheStepSet() {
+        StepValidationCache cache = StepValidationCache.load(LanguageRunner.python, folder.getRoot(), "1.0", "hash");
+        cache.save(Collections.singletonList("Step <a>"));
+
+        StepValidationCache reloaded = StepValidationCache.load(LanguageRunner.python, folder.getRoot(), "1.0", "hash");
+
+        assertThat(reloaded.get("Step <a>")).isNotNull();
+        assertThat(reloaded.get("Other step")).isNull();
+        assertThat(reloaded.get("New step")).isNull();
+    }
+
+    @Test
+    public void missesStepsOfAnotherRunner() {
+        StepValidationCache cache = StepValidationCache.load(LanguageRunner.ruby, folder.getRoot(), "1.0", "hash");
+
+        assertThat(cache.get("Step <a>")).isNull();
+    }
+
+    @Test
+    public void missesStepsOfAnotherRunnerVersion() {
+        StepValidationCache cache = StepValidationCache.load(LanguageRunner.python, folder.getRoot(), "1.1", "hash");
+
+        assertThat(cache.get("Step <a>")).isNull();
+    }
+
+    @Test
+    public void missesStepsOfChangedImplementations() {
+        StepValidationCache cache = StepValidationCache.load(LanguageRunner.python, folder.getRoot(), "1.0", "changed");
+
+        assertThat(cache.get("Step <a>")).isNull();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import gauge.messages.Messages;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class UnixDomainSocketTransportTest {
+    private final UnixDomainSocketTransport transport = new UnixDomainSocketTransport();
+    private BridgeEventLoop eventLoop;
+    private BridgeMetrics metrics;
+
+    @Before
+    public void setUp() {
+        assumeTrue("Unix domain sockets need Java 16 or later", isSupported());
+        eventLoop = new BridgeEventLoop();
+        metrics = new BridgeMetrics(new SimpleMeterRegistry());
+        eventLoop.start();
+    }
+
+    @After
+    public void tearDown() {
+        if (eventLoop != null) {
+            eventLoop.stop();
+        }
+    }
+
+    @Test
+    public void servesAFakeRunnerAndDeletesTheSocket() throws Exception {
+        ServerSocketChannel server = transport.bind(LanguageRunner.python, 0);
+        Map<String, String> runnerEnvironment = transport.getRunnerEnvironment(server);
+        Path socket = Paths.get(runnerEnvironment.get(UnixDomainSocketTransport.GAUGE_INTERNAL_SOCKET));
+        assertThat(socket).exists();
+        CompletableFuture<RunnerChannel> connected = eventLoop.accept(server,
+                sc -> new RunnerChannel(LanguageRunner.python, 0, sc, eventLoop, metrics))
+                .whenComplete((channel, e) -> close(server));
+        Thread runner = new Thread(() -> new FakeRunner(0, 0, 0).run(runnerEnvironment));
+        runner.start();
+
+        RunnerChannel channel = connected.get(5, TimeUnit.SECONDS);
+        try {
+            Messages.Message response = channel.send(Messages.Message.newBuilder()
+                    .setMessageType(Messages.Message.MessageType.StepValidateRequest)
+                    .build()).get(5, TimeUnit.SECONDS);
+
+            assertThat(response.getStepValidateResponse().getIsValid()).isTrue();
+            assertThat(socket).doesNotExist();
+            assertThat(socket.getParent()).doesNotExist();
+        } finally {
+            channel.close();
+            runner.join(5000);
+        }
+    }
+
+    @Test
+    public void deletesTheSocketOfARunnerNeverConnected() throws Exception {
+        ServerSocketChannel server = transport.bind(LanguageRunner.python, 0);
+        Path socket = Paths.get(transport.getRunnerEnvironment(server).get(UnixDomainSocketTransport.GAUGE_INTERNAL_SOCKET));
+
+        transport.close(server);
+
+        assertThat(server.isOpen()).isFalse();
+        assertThat(socket.getParent()).doesNotExist();
+    }
+
+    private void close(ServerSocketChannel server) {
+        try {
+            transport.close(server);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean isSupported() {
+        try {
+            Class.forName("java.net.UnixDomainSocketAddress");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.mdkt.gauge.bridge;
+
+import gauge.messages.Messages;
+import gauge.messages.Spec;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WireJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsRecordsInAppendOrder() throws Exception {
+        File file = new File(folder.getRoot(), "python-0" + WireJournal.SUFFIX);
+        char[] chars = new char[5 * 1024 * 1024];
+        Arrays.fill(chars, 'x');
+        Messages.Message request = executeStep(1, "step {}");
+        // larger than a mapped region
+        Messages.Message response = executionStatus(1, new String(chars));
+        Messages.Message heartbeat = Messages.Message.newBuilder()
+                .setMessageId(-1)
+                .setMessageType(Messages.Message.MessageType.StepNameRequest)
+                .build();
+
+        try (WireJournal journal = WireJournal.create(file)) {
+            journal.append(BridgeMetrics.Direction.sent, request);
+            journal.append(BridgeMetrics.Direction.received, response);
+            journal.append(BridgeMetrics.Direction.sent, heartbeat);
+        }
+        List<WireJournal.Record> records = WireJournal.read(file);
+
+        assertThat(records).extracting("message").containsExactly(request, response, heartbeat);
+        assertThat(records).extracting("direction").containsExactly(BridgeMetrics.Direction.sent,
+                BridgeMetrics.Direction.received, BridgeMetrics.Direction.sent);
+        assertThat(records).extracting("messageId").containsExactly(1L, 1L, -1L);
+        assertThat(records.get(1).getTimestampNanos()).isGreaterThanOrEqualTo(records.get(0).getTimestampNanos());
+    }
+
+    @Test
+    public void readsMessagesWhichSerializeToNoBytes() throws Exception {
+        File file = new File(folder.getRoot(), "python-0" + WireJournal.SUFFIX);
+        Messages.Message empty = Messages.Message.getDefaultInstance();
+        Messages.Message request = executeStep(1, "step {}");
+
+        try (WireJournal journal = WireJournal.create(file)) {
+            journal.append(BridgeMetrics.Direction.sent, empty);
+            journal.append(BridgeMetrics.Direction.sent, request);
+        }
+
+        assertThat(empty.getSerializedSize()).isZero();
+        assertThat(WireJournal.read(file)).extracting("message").containsExactly(empty, request);
+    }
+
+    @Test
+    public void replaysResponsesOfEachStepInOrder() {
+        ReplayRunner runner = new ReplayRunner(Arrays.asList(
+                record(BridgeMetrics.Direction.sent, executeStep(1, "step {}")),
+                record(BridgeMetrics.Direction.sent, executeStep(2, "other step")),
+                record(BridgeMetrics.Direction.received, executionStatus(2, "other")),
+                record(BridgeMetrics.Direction.received, executionStatus(1, "first")),
+                record(BridgeMetrics.Direction.sent, executeStep(3, "step {}")),
+                record(BridgeMetrics.Direction.received, executionStatus(3, "second"))));
+
+        assertThat(message(runner.respond(executeStep(10, "step {}")))).isEqualTo("first");
+        assertThat(message(runner.respond(executeStep(11, "other step")))).isEqualTo("other");
+        Messages.Message response = runner.respond(executeStep(12, "step {}"));
+        assertThat(response.getMessageId()).isEqualTo(12);
+        assertThat(message(response)).isEqualTo("second");
+        assertThat(message(runner.respond(executeStep(13, "step {}")))).isEqualTo("second");
+    }
+
+    private static WireJournal.Record record(BridgeMetrics.Direction direction, Messages.Message msg) {
+        return new WireJournal.Record(0, 0, direction, msg.getMessageId(), msg);
+    }
+
+    private static String message(Messages.Message response) {
+        return response.getExecutionStatusResponse().getExecutionResult().getMessage(0);
+    }
+
+    private static Messages.Message executeStep(long messageId, String parsedStepText) {
+        return Messages.Message.newBuilder()
+                .setMessageId(messageId)
+                .setMessageType(Messages.Message.MessageType.ExecuteStep)
+                .setExecuteStepRequest(Messages.ExecuteStepRequest.newBuilder().setParsedStepText(parsedStepText))
+                .build();
+    }
+
+    private static Messages.Message executionStatus(long messageId, String message) {
+        return Messages.Message.newBuilder()
+                .setMessageId(messageId)
+                .setMessageType(Messages.Message.MessageType.ExecutionStatusResponse)
+                .setExecutionStatusResponse(Messages.ExecutionStatusResponse.newBuilder()
+                        .setExecutionResult(Spec.ProtoExecutionResult.newBuilder().addMessage(message)))
+                .build();
+    }
+}